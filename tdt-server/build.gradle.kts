@@ -7,6 +7,7 @@ plugins {
 	id("io.spring.dependency-management") version "1.1.7"
     id("net.ltgt.errorprone") version "5.1.0"
 	id("org.sonarqube") version "7.3.0.8198"
+	id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "net.czedik.hermann"
@@ -30,6 +31,8 @@ dependencies {
 	implementation("org.springframework.boot:spring-boot-starter-webmvc")
 	implementation("org.springframework.boot:spring-boot-starter-websocket")
 	implementation("org.springframework.boot:spring-boot-starter-validation")
+	implementation("org.springframework.boot:spring-boot-starter-actuator")
+	runtimeOnly("io.micrometer:micrometer-registry-prometheus")
 
 	developmentOnly("org.springframework.boot:spring-boot-devtools")
 	
@@ -40,6 +43,7 @@ dependencies {
 	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 	
 	implementation("org.apache.commons:commons-lang3:3.20.0")
+	implementation("tools.jackson.dataformat:jackson-dataformat-cbor")
 
 	errorprone("com.google.errorprone:error_prone_core:2.49.0")
 	errorprone("com.uber.nullaway:nullaway:0.13.4")
@@ -56,6 +60,44 @@ tasks.withType<JavaCompile>().configureEach {
 	}
 }
 
+// load generator (bots playing games against a local server), see README-server.md
+val loadtest: SourceSet by sourceSets.creating
+configurations[loadtest.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
+tasks.register<JavaExec>("loadTest") {
+	description = "Runs bots which play games against a local server."
+	group = "verification"
+	classpath = loadtest.runtimeClasspath
+	mainClass = "net.czedik.hermann.tdt.loadtest.LoadTest"
+}
+
+// the state of benchmarks gets initialized by JMH in @Setup methods
+tasks.named<JavaCompile>("compileJmhJava") {
+	options.errorprone {
+		option("NullAway:CustomInitializerAnnotations", "org.openjdk.jmh.annotations.Setup")
+	}
+}
+
+// the generated benchmark classes are not null-annotated
+tasks.named<JavaCompile>("jmhCompileGeneratedClasses") {
+	options.errorprone.enabled = false
+}
+
+// run benchmarks with: ./gradlew jmh (optionally: -PjmhIncludes=<regex>)
+// results get written to build/results/jmh/results.json
+jmh {
+	jmhVersion = "1.37"
+	warmupIterations = 3
+	warmup = "2s"
+	iterations = 5
+	timeOnIteration = "2s"
+	fork = 2
+	resultFormat = "JSON"
+	if (project.hasProperty("jmhIncludes")) {
+		includes = listOf(project.property("jmhIncludes").toString())
+	}
+}
+
 sonar {
 	properties {
 		property("sonar.projectKey", "Bronkoknorb_type-draw-type-server")
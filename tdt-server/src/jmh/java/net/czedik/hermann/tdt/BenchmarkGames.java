@@ -0,0 +1,111 @@
+package net.czedik.hermann.tdt;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import net.czedik.hermann.tdt.actions.AccessAction;
+
+/**
+ * Realistic games for benchmarks. Everything is deterministic, so that
+ * results of different runs are comparable.
+ */
+final class BenchmarkGames {
+
+  static final String GAME_ID = "bench";
+
+  private static final Client.SendSettings SEND_SETTINGS =
+    new Client.SendSettings(
+      Integer.MAX_VALUE,
+      Long.MAX_VALUE,
+      Client.OverflowStrategy.DROP_SUPERSEDED
+    );
+
+  static final GameMetrics METRICS = new GameMetrics(
+    new SimpleMeterRegistry()
+  );
+
+  private BenchmarkGames() {
+    // hide constructor
+  }
+
+  static Player player(int i) {
+    return new Player(
+      "player-id-" + i,
+      "Player " + i,
+      "face" + (i % 16),
+      i == 0
+    );
+  }
+
+  /**
+   * @param finishedRounds number of completely played rounds (up to the number
+   *                       of players, which means the game is finished)
+   * @return state of a game in which half of the players have finished the
+   * current round
+   */
+  static GameState createGameState(int numberOfPlayers, int finishedRounds) {
+    GameState gameState = new GameState();
+    for (int i = 0; i < numberOfPlayers; i++) {
+      gameState.players.add(player(i));
+    }
+    int[][] gameMatrix = GameRoundsGenerator.generate(numberOfPlayers);
+    new GameEvent.GameStarted(gameMatrix).applyTo(gameState);
+    Story[] stories = Objects.requireNonNull(gameState.stories);
+    int lastRound = Math.min(finishedRounds, numberOfPlayers - 1);
+    for (int round = 0; round <= lastRound; round++) {
+      // in the current round only every second player is done
+      int step = round < finishedRounds ? 1 : 2;
+      for (int p = 0; p < numberOfPlayers; p += step) {
+        int storyIndex = gameMatrix[round][p];
+        stories[storyIndex].elements[round] = round % 2 == 0
+          ? StoryElement.createTextElement(
+              "A sentence which player " + p + " typed in round " + round
+            )
+          : StoryElement.createImageElement(
+              String.format(
+                "00000000-0000-0000-0000-%012d.png",
+                round * 1000 + p
+              )
+            );
+      }
+    }
+    if (finishedRounds >= numberOfPlayers) {
+      new GameEvent.RoundAdvanced(
+        numberOfPlayers - 1,
+        GameState.State.Finished
+      ).applyTo(gameState);
+    } else {
+      gameState.round = finishedRounds;
+    }
+    return gameState;
+  }
+
+  static Game createGame(GameState gameState, Path gameDir) {
+    return new Game(GAME_ID, gameDir, gameState, 0);
+  }
+
+  static Client createClient(String id) {
+    // sending on the calling thread to a session which discards everything
+    return new Client(
+      new NoOpWebSocketSession(id),
+      SEND_SETTINGS,
+      Runnable::run,
+      METRICS
+    );
+  }
+
+  /**
+   * Connects one client for every player of the game.
+   */
+  static List<Client> connectAllPlayers(Game game, GameState gameState) {
+    List<Client> clients = new ArrayList<>();
+    for (Player player : gameState.players) {
+      Client client = createClient("client-of-" + player.id());
+      game.access(client, new AccessAction(GAME_ID, player.id()));
+      clients.add(client);
+    }
+    return clients;
+  }
+}
@@ -0,0 +1,119 @@
+package net.czedik.hermann.tdt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Loading a game from its state file, and storing a snapshot of its state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameLoaderBenchmark {
+
+  @Param({ "4", "10", "30" })
+  public int numberOfPlayers;
+
+  private Path storageDir;
+
+  private GameStore gameStore;
+
+  private GameCatalog catalog;
+
+  private Path gameDir;
+
+  private GameState gameState;
+
+  private GameStateWriter stateWriter;
+
+  @Setup
+  public void setUp() throws IOException {
+    storageDir = Files.createTempDirectory("tdt-bench");
+    gameStore = new GameStore(storageDir.toString(), Integer.MAX_VALUE);
+    catalog = new GameCatalog(storageDir.toString(), 1, gameStore);
+    catalog.getScan().join();
+    gameDir = Files.createDirectories(
+      gameStore.getGameDir(BenchmarkGames.GAME_ID)
+    );
+    // a finished game has the largest state
+    gameState = BenchmarkGames.createGameState(
+      numberOfPlayers,
+      numberOfPlayers
+    );
+    Files.write(
+      gameDir.resolve(Game.STATE_FILENAME),
+      JSONHelper.objectMapper.writeValueAsBytes(gameState)
+    );
+    // flushing is triggered explicitly by the benchmark
+    stateWriter = new GameStateWriter(
+      TimeUnit.HOURS.toMillis(1),
+      BenchmarkGames.METRICS
+    );
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    stateWriter.shutdown();
+    catalog.shutdown();
+    gameStore.close();
+    try (Stream<Path> files = Files.walk(storageDir)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Benchmark
+  public Game loadGame() {
+    GameLoader gameLoader = new GameLoader(
+      BenchmarkGames.GAME_ID,
+      gameDir,
+      gameStore,
+      stateWriter,
+      catalog,
+      Runnable::run,
+      BenchmarkGames.METRICS
+    );
+    GameLoader.GameRef gameRef = Objects.requireNonNull(
+      gameLoader.tryGetGameRef()
+    );
+    try {
+      return gameRef.useGame(game -> {
+        return Objects.requireNonNull(game);
+      });
+    } finally {
+      gameRef.close();
+      gameLoader.retireIfUnused();
+    }
+  }
+
+  @Benchmark
+  public void storeGame() {
+    // a game whose journal is long enough to be compacted into a new snapshot
+    Game game = new Game(
+      BenchmarkGames.GAME_ID,
+      gameDir,
+      gameState,
+      Game.MAX_JOURNAL_ENTRIES_BEFORE_SNAPSHOT
+    );
+    stateWriter.submit(
+      gameDir,
+      Objects.requireNonNull(game.takeStateUpdate(true))
+    );
+    stateWriter.flush();
+  }
+}
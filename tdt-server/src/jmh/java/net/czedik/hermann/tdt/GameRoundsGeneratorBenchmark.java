@@ -0,0 +1,24 @@
+package net.czedik.hermann.tdt;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameRoundsGeneratorBenchmark {
+
+  @Param({ "2", "3", "10", "11", "50", "100" })
+  public int numberOfPlayers;
+
+  @Benchmark
+  public int[][] generate() {
+    return GameRoundsGenerator.generate(numberOfPlayers);
+  }
+}
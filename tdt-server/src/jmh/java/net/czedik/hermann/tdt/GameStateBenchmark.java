@@ -0,0 +1,57 @@
+package net.czedik.hermann.tdt;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import net.czedik.hermann.tdt.playerstate.PlayerState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Computing the player states of a game, and sending them to all players.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameStateBenchmark {
+
+  @Param({ "2", "10", "30", "100" })
+  public int numberOfPlayers;
+
+  // "middle": half of the rounds are finished, "finished": the stories are shown
+  @Param({ "middle", "finished" })
+  public String phase = "middle";
+
+  private Game game;
+
+  private Player lastPlayer;
+
+  @Setup
+  public void setUp() {
+    int finishedRounds = "finished".equals(phase)
+      ? numberOfPlayers
+      : numberOfPlayers / 2;
+    GameState gameState = BenchmarkGames.createGameState(
+      numberOfPlayers,
+      finishedRounds
+    );
+    game = BenchmarkGames.createGame(gameState, Path.of("bench"));
+    BenchmarkGames.connectAllPlayers(game, gameState);
+    lastPlayer = gameState.players.getLast();
+  }
+
+  @Benchmark
+  public PlayerState getPlayerState() {
+    return game.getPlayerState(lastPlayer);
+  }
+
+  @Benchmark
+  public void updateStateForAllPlayers() {
+    game.updateStateForAllPlayers();
+  }
+}
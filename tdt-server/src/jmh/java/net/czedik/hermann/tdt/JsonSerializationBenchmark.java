@@ -0,0 +1,89 @@
+package net.czedik.hermann.tdt;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import net.czedik.hermann.tdt.playerstate.AlreadyStartedGameState;
+import net.czedik.hermann.tdt.playerstate.JoinState;
+import net.czedik.hermann.tdt.playerstate.PlayerState;
+import net.czedik.hermann.tdt.playerstate.UnknownGameState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization of every type of player state (of a game with 10 players).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonSerializationBenchmark {
+
+  private static final int NUMBER_OF_PLAYERS = 10;
+
+  @Param(
+    {
+      "unknown",
+      "join",
+      "alreadyStarted",
+      "waitForPlayers",
+      "waitForGameStart",
+      "type",
+      "draw",
+      "waitForRoundFinish",
+      "stories",
+    }
+  )
+  public String stateType = "unknown";
+
+  private PlayerState playerState;
+
+  @Setup
+  public void setUp() {
+    playerState = switch (stateType) {
+      case "unknown" -> new UnknownGameState();
+      case "join" -> new JoinState();
+      case "alreadyStarted" -> new AlreadyStartedGameState();
+      case "waitForPlayers" -> getNotStartedState(0);
+      case "waitForGameStart" -> getNotStartedState(1);
+      // in the current round, the players with an even index are finished
+      case "type" -> getStartedState(4, 1);
+      case "draw" -> getStartedState(5, 1);
+      case "waitForRoundFinish" -> getStartedState(4, 0);
+      case "stories" -> getStartedState(NUMBER_OF_PLAYERS, 0);
+      default -> throw new IllegalArgumentException(
+        "Unknown state type: " + stateType
+      );
+    };
+  }
+
+  private static PlayerState getNotStartedState(int playerIndex) {
+    GameState gameState = new GameState();
+    for (int i = 0; i < NUMBER_OF_PLAYERS; i++) {
+      gameState.players.add(BenchmarkGames.player(i));
+    }
+    Game game = BenchmarkGames.createGame(gameState, Path.of("bench"));
+    return game.getPlayerState(BenchmarkGames.player(playerIndex));
+  }
+
+  private static PlayerState getStartedState(
+    int finishedRounds,
+    int playerIndex
+  ) {
+    GameState gameState = BenchmarkGames.createGameState(
+      NUMBER_OF_PLAYERS,
+      finishedRounds
+    );
+    Game game = BenchmarkGames.createGame(gameState, Path.of("bench"));
+    return game.getPlayerState(BenchmarkGames.player(playerIndex));
+  }
+
+  @Benchmark
+  public String objectToJsonString() {
+    return JSONHelper.objectToJsonString(playerState);
+  }
+}
@@ -0,0 +1,104 @@
+package net.czedik.hermann.tdt;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Session which discards all messages, so that benchmarks measure the server
+ * and not the network.
+ */
+class NoOpWebSocketSession implements WebSocketSession {
+
+  private final String id;
+
+  private final Map<String, Object> attributes = new HashMap<>();
+
+  NoOpWebSocketSession(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public @Nullable URI getUri() {
+    return null;
+  }
+
+  @Override
+  public HttpHeaders getHandshakeHeaders() {
+    return new HttpHeaders();
+  }
+
+  @Override
+  public Map<String, Object> getAttributes() {
+    return attributes;
+  }
+
+  @Override
+  public @Nullable Principal getPrincipal() {
+    return null;
+  }
+
+  @Override
+  public @Nullable InetSocketAddress getLocalAddress() {
+    return null;
+  }
+
+  @Override
+  public @Nullable InetSocketAddress getRemoteAddress() {
+    return null;
+  }
+
+  @Override
+  public @Nullable String getAcceptedProtocol() {
+    return null;
+  }
+
+  @Override
+  public void setTextMessageSizeLimit(int messageSizeLimit) {}
+
+  @Override
+  public int getTextMessageSizeLimit() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public void setBinaryMessageSizeLimit(int messageSizeLimit) {}
+
+  @Override
+  public int getBinaryMessageSizeLimit() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public List<WebSocketExtension> getExtensions() {
+    return List.of();
+  }
+
+  @Override
+  public void sendMessage(WebSocketMessage<?> message) {}
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+
+  @Override
+  public void close() {}
+
+  @Override
+  public void close(CloseStatus status) {}
+}
@@ -0,0 +1,93 @@
+package net.czedik.hermann.tdt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Decoding of the action messages of the clients.
+ * <p>
+ * The client is not connected to any game, so the decoded actions are
+ * dropped by the {@link GameManager} right away.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WebSocketHandlerBenchmark {
+
+  @Param({ "start", "type" })
+  public String action = "start";
+
+  private GameManager gameManager;
+
+  private WebSocketHandler webSocketHandler;
+
+  private NoOpWebSocketSession session;
+
+  private TextMessage message;
+
+  @Setup
+  public void setUp() throws IOException {
+    String storageDir = Files.createTempDirectory("tdt-bench").toString();
+    GameStore gameStore = new GameStore(storageDir, Integer.MAX_VALUE);
+    gameManager = new GameManager(
+      storageDir,
+      1000,
+      1,
+      1,
+      false,
+      0,
+      0,
+      false,
+      0,
+      gameStore,
+      new GameCatalog(storageDir, 1, gameStore),
+      new ImageCache(0, false),
+      new ThumbnailGenerator(new int[0], 1, 1, new ImageCache(0, false)),
+      BenchmarkGames.METRICS
+    );
+    webSocketHandler = new WebSocketHandler(
+      gameManager,
+      new Client.SendSettings(
+        Integer.MAX_VALUE,
+        Long.MAX_VALUE,
+        Client.OverflowStrategy.DROP_SUPERSEDED
+      ),
+      BenchmarkGames.METRICS,
+      5 * 1024 * 1024
+    );
+    session = new NoOpWebSocketSession("bench-session");
+    webSocketHandler.afterConnectionEstablished(session);
+    message = new TextMessage(
+      switch (action) {
+        case "start" -> "{\"action\":\"start\",\"content\":{}}";
+        case "type" -> "{\"action\":\"type\",\"content\":{\"text\":\"" +
+        "A sentence which is typed by a player, of typical length." +
+        "\"}}";
+        default -> throw new IllegalArgumentException(
+          "Unknown action: " + action
+        );
+      }
+    );
+  }
+
+  @TearDown
+  public void tearDown() {
+    gameManager.shutdown();
+  }
+
+  @Benchmark
+  public void handleTextMessage() throws IOException {
+    webSocketHandler.handleTextMessage(session, message);
+  }
+}
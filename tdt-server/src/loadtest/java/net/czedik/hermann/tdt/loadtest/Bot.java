@@ -0,0 +1,331 @@
+package net.czedik.hermann.tdt.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.jspecify.annotations.Nullable;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * A player, which reacts to the states sent by the server like the web app
+ * does: it joins, starts the game (if it is the creator), types, draws and
+ * finally loads all images of the stories.
+ * <p>
+ * The latency of an action is the time from sending it until the next state
+ * update arrives.
+ */
+class Bot implements WebSocket.Listener {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final LoadTest.Environment environment;
+
+  private final String gameId;
+
+  private final String playerId;
+
+  private final String name;
+
+  private final String face;
+
+  private final int numberOfPlayers;
+
+  private final Random random;
+
+  private final CompletableFuture<Void> finished = new CompletableFuture<>();
+
+  // the listener methods are called one after the other, but actions are sent from the scheduler
+  // guarded by this
+  private @Nullable WebSocket webSocket;
+
+  // guarded by this (sends must not overlap)
+  private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(
+    null
+  );
+
+  // guarded by this
+  private @Nullable String pendingAction;
+
+  // guarded by this
+  private long pendingActionStartNanos;
+
+  // guarded by this (the server sends the same state again, e.g. when others finish)
+  private final Set<String> handledSteps = new HashSet<>();
+
+  private final StringBuilder messageBuffer = new StringBuilder();
+
+  Bot(
+    LoadTest.Environment environment,
+    String gameId,
+    String playerId,
+    String name,
+    int numberOfPlayers,
+    long seed
+  ) {
+    this.environment = environment;
+    this.gameId = gameId;
+    this.playerId = playerId;
+    this.name = name;
+    this.random = new Random(seed);
+    this.face = String.valueOf((char) ('A' + random.nextInt(26)));
+    this.numberOfPlayers = numberOfPlayers;
+  }
+
+  /**
+   * @return future which completes when the bot has connected
+   */
+  CompletableFuture<WebSocket> connect() {
+    return environment
+      .httpClient()
+      .newWebSocketBuilder()
+      .buildAsync(environment.settings().webSocketUri(), this);
+  }
+
+  /**
+   * @return future which completes when the bot has loaded all stories
+   */
+  CompletableFuture<Void> getFinished() {
+    return finished;
+  }
+
+  @Override
+  public void onOpen(WebSocket webSocket) {
+    synchronized (this) {
+      this.webSocket = webSocket;
+    }
+    webSocket.request(1);
+    sendAction("access", Map.of("gameId", gameId, "playerId", playerId));
+  }
+
+  @Override
+  public @Nullable CompletionStage<?> onText(
+    WebSocket webSocket,
+    CharSequence data,
+    boolean last
+  ) {
+    messageBuffer.append(data);
+    if (last) {
+      String message = messageBuffer.toString();
+      messageBuffer.setLength(0);
+      try {
+        handleState(objectMapper.readTree(message));
+      } catch (RuntimeException e) {
+        fail(e);
+      }
+    }
+    webSocket.request(1);
+    return null;
+  }
+
+  @Override
+  public @Nullable CompletionStage<?> onClose(
+    WebSocket webSocket,
+    int statusCode,
+    String reason
+  ) {
+    fail(
+      new IllegalStateException(
+        "Connection closed by server: " + statusCode + " " + reason
+      )
+    );
+    return null;
+  }
+
+  @Override
+  public void onError(WebSocket webSocket, Throwable error) {
+    fail(error);
+  }
+
+  private void handleState(JsonNode state) {
+    recordPendingAction();
+    String stateName = state.get("state").asString();
+    switch (stateName) {
+      case "join" -> sendAction(
+        "join",
+        Map.of(
+          "gameId",
+          gameId,
+          "playerId",
+          playerId,
+          "name",
+          name,
+          "face",
+          face
+        )
+      );
+      case "waitForPlayers" -> {
+        if (state.get("players").size() == numberOfPlayers) {
+          afterThinking("start", () -> sendAction("start", null));
+        }
+      }
+      case "type" -> afterThinking("type:" + state.get("round").asInt(), () ->
+        sendAction(
+          "type",
+          Map.of("text", "Sentence of " + name + " " + random.nextInt())
+        )
+      );
+      case "draw" -> afterThinking("draw:" + state.get("round").asInt(), () ->
+        sendDrawing(environment.drawings().get(random.nextInt()))
+      );
+      case "stories" -> loadStories(state);
+      case "waitForGameStart", "waitForRoundFinish" -> {
+        // nothing to do
+      }
+      default -> fail(new IllegalStateException("Unexpected state: " + state));
+    }
+  }
+
+  private void afterThinking(String step, Runnable action) {
+    synchronized (this) {
+      if (!handledSteps.add(step)) {
+        return;
+      }
+    }
+    LoadTestSettings settings = environment.settings();
+    long minMillis = settings.minThinkTime().toMillis();
+    long maxMillis = settings.maxThinkTime().toMillis();
+    long thinkTimeMillis =
+      minMillis + random.nextLong(maxMillis - minMillis + 1);
+    var _ = environment
+      .scheduler()
+      .schedule(
+        () -> {
+          try {
+            action.run();
+          } catch (RuntimeException e) {
+            fail(e);
+          }
+        },
+        thinkTimeMillis,
+        TimeUnit.MILLISECONDS
+      );
+  }
+
+  private void sendAction(
+    String action,
+    @Nullable Map<String, String> content
+  ) {
+    Map<String, Object> message = content != null
+      ? Map.of("action", action, "content", content)
+      : Map.of("action", action);
+    String json = objectMapper.writeValueAsString(message);
+    send(action, ws -> ws.sendText(json, true));
+  }
+
+  private void sendDrawing(byte[] png) {
+    send("draw", ws -> ws.sendBinary(ByteBuffer.wrap(png), true));
+  }
+
+  private synchronized void send(
+    String action,
+    Function<WebSocket, CompletableFuture<WebSocket>> sender
+  ) {
+    WebSocket ws = webSocket;
+    if (ws == null || finished.isDone()) {
+      return;
+    }
+    lastSend = lastSend.thenCompose(x -> {
+      synchronized (this) {
+        pendingAction = action;
+        pendingActionStartNanos = System.nanoTime();
+      }
+      return sender.apply(ws);
+    });
+    var _ = lastSend.exceptionally(e -> {
+      fail(e);
+      return null;
+    });
+  }
+
+  private synchronized void recordPendingAction() {
+    if (pendingAction != null) {
+      environment
+        .recorder()
+        .record(pendingAction, System.nanoTime() - pendingActionStartNanos);
+      pendingAction = null;
+    }
+  }
+
+  private void loadStories(JsonNode state) {
+    synchronized (this) {
+      if (!handledSteps.add("stories")) {
+        return;
+      }
+    }
+    List<String> imageSrcs = new ArrayList<>();
+    for (JsonNode story : state.get("stories")) {
+      for (JsonNode element : story.get("elements")) {
+        if ("image".equals(element.get("type").asString())) {
+          imageSrcs.add(element.get("content").asString());
+        }
+      }
+    }
+    // the web app loads all images of all stories at once
+    List<CompletableFuture<?>> imageLoads = new ArrayList<>();
+    for (String imageSrc : imageSrcs) {
+      URI imageUri = environment.settings().serverUrl().resolve(imageSrc);
+      imageLoads.add(loadImage(imageUri));
+    }
+    var _ = CompletableFuture.allOf(
+      imageLoads.toArray(CompletableFuture[]::new)
+    ).whenComplete((result, e) -> {
+      if (e != null) {
+        fail(e);
+      } else {
+        close();
+        finished.complete(null);
+      }
+    });
+  }
+
+  private CompletableFuture<Void> loadImage(URI uri) {
+    long startNanos = System.nanoTime();
+    return environment
+      .httpClient()
+      .sendAsync(
+        HttpRequest.newBuilder(uri).GET().build(),
+        HttpResponse.BodyHandlers.discarding()
+      )
+      .thenAccept(response -> {
+        if (response.statusCode() != 200) {
+          throw new IllegalStateException(
+            "Loading image " + uri + " failed: " + response.statusCode()
+          );
+        }
+        environment.recorder().record("image", System.nanoTime() - startNanos);
+      });
+  }
+
+  /**
+   * Disconnects the bot, unless it has finished already.
+   */
+  void abort() {
+    fail(new IllegalStateException("Bot aborted"));
+  }
+
+  private void fail(Throwable e) {
+    if (finished.completeExceptionally(e)) {
+      close();
+    }
+  }
+
+  private synchronized void close() {
+    if (webSocket != null) {
+      webSocket.abort();
+      webSocket = null;
+    }
+  }
+}
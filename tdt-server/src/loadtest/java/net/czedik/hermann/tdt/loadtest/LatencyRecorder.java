@@ -0,0 +1,76 @@
+package net.czedik.hermann.tdt.loadtest;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects latencies by operation and prints percentiles.
+ * <p>
+ * All values are kept (a load test produces at most a few million), so the
+ * percentiles are exact.
+ */
+class LatencyRecorder {
+
+  private static class Values {
+
+    private long[] nanos = new long[1024];
+
+    private int count = 0;
+
+    void add(long value) {
+      if (count == nanos.length) {
+        nanos = Arrays.copyOf(nanos, count * 2);
+      }
+      nanos[count++] = value;
+    }
+  }
+
+  // guarded by this
+  private final Map<String, Values> valuesByOperation = new TreeMap<>();
+
+  synchronized void record(String operation, long nanos) {
+    valuesByOperation.computeIfAbsent(operation, o -> new Values()).add(nanos);
+  }
+
+  synchronized long getCount(String operation) {
+    Values values = valuesByOperation.get(operation);
+    return values != null ? values.count : 0;
+  }
+
+  synchronized void printReport(PrintStream out, double seconds) {
+    out.printf(
+      "%-20s %10s %10s %10s %10s %10s %10s%n",
+      "operation",
+      "count",
+      "per sec",
+      "p50 ms",
+      "p99 ms",
+      "p999 ms",
+      "max ms"
+    );
+    for (Map.Entry<String, Values> entry : valuesByOperation.entrySet()) {
+      Values values = entry.getValue();
+      long[] sorted = Arrays.copyOf(values.nanos, values.count);
+      Arrays.sort(sorted);
+      out.printf(
+        "%-20s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+        entry.getKey(),
+        sorted.length,
+        sorted.length / seconds,
+        percentileMillis(sorted, 0.5),
+        percentileMillis(sorted, 0.99),
+        percentileMillis(sorted, 0.999),
+        percentileMillis(sorted, 1)
+      );
+    }
+  }
+
+  private static double percentileMillis(long[] sorted, double percentile) {
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    long nanos = sorted[Math.clamp(index, 0, sorted.length - 1)];
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
@@ -0,0 +1,194 @@
+package net.czedik.hermann.tdt.loadtest;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Load generator: bots play complete games against a (local) server, and the
+ * throughput and latencies are reported at the end.
+ * <p>
+ * Run with: {@code ./gradlew loadTest --args="--games=1000 --concurrency=100"}
+ * (see {@link LoadTestSettings#USAGE} for all options)
+ */
+public class LoadTest {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  /**
+   * Everything the bots share.
+   */
+  record Environment(
+    LoadTestSettings settings,
+    HttpClient httpClient,
+    ScheduledExecutorService scheduler,
+    LatencyRecorder recorder,
+    SyntheticDrawings drawings
+  ) {}
+
+  private final Environment environment;
+
+  private final Random random;
+
+  private final AtomicInteger finishedGames = new AtomicInteger();
+
+  private final AtomicInteger failedGames = new AtomicInteger();
+
+  private final AtomicInteger bots = new AtomicInteger();
+
+  private LoadTest(LoadTestSettings settings) {
+    environment = new Environment(
+      settings,
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build(),
+      Executors.newScheduledThreadPool(
+        Runtime.getRuntime().availableProcessors()
+      ),
+      new LatencyRecorder(),
+      new SyntheticDrawings(settings.drawingSize(), settings.seed())
+    );
+    random = new Random(settings.seed());
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    LoadTestSettings settings;
+    try {
+      settings = LoadTestSettings.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(LoadTestSettings.USAGE);
+      System.exit(2);
+      return;
+    }
+    System.out.println("Running load test: " + settings);
+    new LoadTest(settings).run();
+  }
+
+  private void run() throws InterruptedException {
+    LoadTestSettings settings = environment.settings();
+    Semaphore runningGames = new Semaphore(settings.concurrency());
+    List<CompletableFuture<Void>> games = new ArrayList<>();
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < settings.games(); i++) {
+      runningGames.acquire();
+      int numberOfPlayers =
+        settings.minPlayers() +
+        random.nextInt(settings.maxPlayers() - settings.minPlayers() + 1);
+      games.add(
+        playGame(numberOfPlayers, random.nextLong()).whenComplete(
+          (result, e) -> {
+            runningGames.release();
+            if (e != null) {
+              failedGames.incrementAndGet();
+              System.err.println("Game failed: " + e);
+            } else {
+              finishedGames.incrementAndGet();
+            }
+          }
+        )
+      );
+    }
+    CompletableFuture.allOf(games.toArray(CompletableFuture[]::new))
+      .exceptionally(e -> null)
+      .join();
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    environment.scheduler().shutdownNow();
+
+    System.out.printf(
+      "%nPlayed %d games (%d failed) with %d bots in %.1f s: %.2f games/s%n%n",
+      finishedGames.get(),
+      failedGames.get(),
+      bots.get(),
+      seconds,
+      finishedGames.get() / seconds
+    );
+    environment.recorder().printReport(System.out, seconds);
+  }
+
+  private CompletableFuture<Void> playGame(int numberOfPlayers, long seed) {
+    Random gameRandom = new Random(seed);
+    String creatorId = UUID.randomUUID().toString();
+    List<Bot> gameBots = new CopyOnWriteArrayList<>();
+    return createGame(creatorId)
+      .thenCompose(gameId -> {
+        for (int p = 0; p < numberOfPlayers; p++) {
+          gameBots.add(
+            new Bot(
+              environment,
+              gameId,
+              p == 0 ? creatorId : UUID.randomUUID().toString(),
+              "Bot " + p,
+              numberOfPlayers,
+              gameRandom.nextLong()
+            )
+          );
+        }
+        bots.addAndGet(numberOfPlayers);
+        // the creator first, so that the others find the game waiting for players
+        Bot creator = gameBots.getFirst();
+        return creator
+          .connect()
+          .thenCompose(ws ->
+            CompletableFuture.allOf(
+              gameBots
+                .stream()
+                .skip(1)
+                .map(Bot::connect)
+                .toArray(CompletableFuture[]::new)
+            )
+          )
+          .thenCompose(x ->
+            CompletableFuture.allOf(
+              gameBots
+                .stream()
+                .map(Bot::getFinished)
+                .toArray(CompletableFuture[]::new)
+            )
+          );
+      })
+      .orTimeout(
+        environment.settings().gameTimeout().toMillis(),
+        TimeUnit.MILLISECONDS
+      )
+      // e.g. after a timeout, or if another bot of the game failed
+      .whenComplete((result, e) -> gameBots.forEach(Bot::abort));
+  }
+
+  private CompletableFuture<String> createGame(String creatorId) {
+    String body = objectMapper.writeValueAsString(
+      Map.of("playerId", creatorId, "playerName", "Bot 0", "playerFace", "A")
+    );
+    HttpRequest request = HttpRequest.newBuilder(
+      environment.settings().serverUrl().resolve("/api/create")
+    )
+      .header("Content-Type", "application/json")
+      .POST(HttpRequest.BodyPublishers.ofString(body))
+      .build();
+    long startNanos = System.nanoTime();
+    return environment
+      .httpClient()
+      .sendAsync(request, HttpResponse.BodyHandlers.ofString())
+      .thenApply(response -> {
+        if (response.statusCode() != 200) {
+          throw new IllegalStateException(
+            "Creating game failed: " + response.statusCode()
+          );
+        }
+        environment.recorder().record("create", System.nanoTime() - startNanos);
+        return objectMapper.readTree(response.body()).get("gameId").asString();
+      });
+  }
+}
@@ -0,0 +1,140 @@
+package net.czedik.hermann.tdt.loadtest;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test, parsed from command line arguments of the form
+ * {@code --name=value}.
+ *
+ * @param serverUrl      base URL of the server (must be a local test instance)
+ * @param games          total number of games to play
+ * @param concurrency    max. number of games played at the same time
+ * @param minPlayers     min. number of players per game
+ * @param maxPlayers     max. number of players per game
+ * @param minThinkTime   min. time a bot waits before typing, drawing or
+ *                       starting
+ * @param maxThinkTime   max. time a bot waits before typing, drawing or
+ *                       starting
+ * @param drawingSize    width and height of the synthetic drawings (pixels)
+ * @param gameTimeout    games taking longer are counted as failed
+ * @param seed           seed for all random decisions, so that runs are
+ *                       repeatable
+ */
+record LoadTestSettings(
+  URI serverUrl,
+  int games,
+  int concurrency,
+  int minPlayers,
+  int maxPlayers,
+  Duration minThinkTime,
+  Duration maxThinkTime,
+  int drawingSize,
+  Duration gameTimeout,
+  long seed
+) {
+  static final String USAGE = """
+    Options (all optional):
+      --server-url=http://localhost:8080
+      --games=100
+      --concurrency=10
+      --min-players=3
+      --max-players=8
+      --min-think-time-millis=500
+      --max-think-time-millis=3000
+      --drawing-size=500
+      --game-timeout-seconds=300
+      --seed=1
+    """;
+
+  LoadTestSettings {
+    if (games < 1 || concurrency < 1) {
+      throw new IllegalArgumentException(
+        "games and concurrency must be positive"
+      );
+    }
+    if (minPlayers < 2 || maxPlayers < minPlayers) {
+      throw new IllegalArgumentException(
+        "Invalid number of players: " + minPlayers + "-" + maxPlayers
+      );
+    }
+    if (maxThinkTime.compareTo(minThinkTime) < 0) {
+      throw new IllegalArgumentException("Invalid think time");
+    }
+    if (!isLocal(serverUrl)) {
+      throw new IllegalArgumentException(
+        "Only a local server may be load tested: " + serverUrl
+      );
+    }
+  }
+
+  private static boolean isLocal(URI serverUrl) {
+    String host = serverUrl.getHost();
+    if (host == null) {
+      return false;
+    }
+    try {
+      return InetAddress.getByName(host).isLoopbackAddress();
+    } catch (UnknownHostException e) {
+      return false;
+    }
+  }
+
+  static LoadTestSettings parse(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException("Invalid argument: " + arg);
+      }
+      int separator = arg.indexOf('=');
+      options.put(arg.substring(2, separator), arg.substring(separator + 1));
+    }
+    LoadTestSettings settings = new LoadTestSettings(
+      URI.create(take(options, "server-url", "http://localhost:8080")),
+      Integer.parseInt(take(options, "games", "100")),
+      Integer.parseInt(take(options, "concurrency", "10")),
+      Integer.parseInt(take(options, "min-players", "3")),
+      Integer.parseInt(take(options, "max-players", "8")),
+      Duration.ofMillis(
+        Long.parseLong(take(options, "min-think-time-millis", "500"))
+      ),
+      Duration.ofMillis(
+        Long.parseLong(take(options, "max-think-time-millis", "3000"))
+      ),
+      Integer.parseInt(take(options, "drawing-size", "500")),
+      Duration.ofSeconds(
+        Long.parseLong(take(options, "game-timeout-seconds", "300"))
+      ),
+      Long.parseLong(take(options, "seed", "1"))
+    );
+    if (!options.isEmpty()) {
+      throw new IllegalArgumentException(
+        "Unknown options: " + options.keySet()
+      );
+    }
+    return settings;
+  }
+
+  private static String take(
+    Map<String, String> options,
+    String name,
+    String defaultValue
+  ) {
+    String value = options.remove(name);
+    return value != null ? value : defaultValue;
+  }
+
+  URI webSocketUri() {
+    String scheme = "https".equals(serverUrl.getScheme()) ? "wss" : "ws";
+    return URI.create(
+      scheme +
+      "://" +
+      serverUrl.getRawAuthority() +
+      "/api/websocket"
+    );
+  }
+}
@@ -0,0 +1,83 @@
+package net.czedik.hermann.tdt.loadtest;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * PNG images which resemble the drawings of players (some strokes on a white
+ * background), so that uploads have a realistic size.
+ */
+class SyntheticDrawings {
+
+  private static final int NUMBER_OF_DRAWINGS = 16;
+
+  private final List<byte[]> drawings = new ArrayList<>();
+
+  SyntheticDrawings(int size, long seed) {
+    Random random = new Random(seed);
+    for (int i = 0; i < NUMBER_OF_DRAWINGS; i++) {
+      drawings.add(createDrawing(size, random));
+    }
+  }
+
+  byte[] get(int i) {
+    return drawings.get(Math.floorMod(i, drawings.size()));
+  }
+
+  private static byte[] createDrawing(int size, Random random) {
+    BufferedImage image = new BufferedImage(
+      size,
+      size,
+      BufferedImage.TYPE_INT_ARGB
+    );
+    Graphics2D g = image.createGraphics();
+    try {
+      g.setRenderingHint(
+        RenderingHints.KEY_ANTIALIASING,
+        RenderingHints.VALUE_ANTIALIAS_ON
+      );
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, size, size);
+      int strokes = 10 + random.nextInt(30);
+      for (int s = 0; s < strokes; s++) {
+        g.setColor(new Color(random.nextInt(0x1000000)));
+        g.setStroke(
+          new BasicStroke(
+            2 + random.nextInt(10),
+            BasicStroke.CAP_ROUND,
+            BasicStroke.JOIN_ROUND
+          )
+        );
+        int x = random.nextInt(size);
+        int y = random.nextInt(size);
+        int points = 5 + random.nextInt(40);
+        for (int p = 0; p < points; p++) {
+          int nextX = Math.clamp(x + random.nextInt(41) - 20, 0, size - 1);
+          int nextY = Math.clamp(y + random.nextInt(41) - 20, 0, size - 1);
+          g.drawLine(x, y, nextX, nextY);
+          x = nextX;
+          y = nextY;
+        }
+      }
+    } finally {
+      g.dispose();
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(image, "png", out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+}
@@ -1,48 +1,398 @@
 package net.czedik.hermann.tdt;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import net.czedik.hermann.tdt.playerstate.PlayerState;
+import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.PingMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.node.JsonNodeFactory;
+import tools.jackson.databind.node.ObjectNode;
 
+/**
+ * A connected WebSocket client.
+ * <p>
+ * Sending never blocks the caller: messages are put into a bounded outbound
+ * queue, which is drained by a sender task of this client. Slow clients
+ * therefore cannot stall the game (see {@link SendSettings} for the limits).
+ * <p>
+ * Clients which negotiated the delta protocol (see {@link MessageEncoding})
+ * get versioned player states instead:
+ * <ul>
+ * <li>{@code {"type": "snapshot", "version": v, "state": {...}}}</li>
+ * <li>{@code {"type": "patch", "version": v, "base": b, "patch": [...]}}:
+ * a JSON Patch (RFC 6902) to be applied to the state of version b</li>
+ * </ul>
+ * The client acknowledges the versions it has received (action "ack" with
+ * the version), and patches are always relative to the last acknowledged
+ * version. So the client needs to keep the states from its last
+ * acknowledged version on. If it does not have the base of a patch, it
+ * requests a snapshot (action "resync"). After a reconnect, the first state
+ * is always a snapshot.
+ */
 public class Client {
 
   private static final Logger log = LoggerFactory.getLogger(Client.class);
 
+  public enum OverflowStrategy {
+    /**
+     * Drop queued player states which have been superseded by a newer one
+     * (every player state is complete, so only the newest one matters). If
+     * the buffer size limit is exceeded nevertheless (e.g. by a huge state,
+     * while another one is being sent), the connection gets closed.
+     */
+    DROP_SUPERSEDED,
+
+    /**
+     * Close the connection. The client will reconnect and get the current
+     * state.
+     */
+    CLOSE,
+  }
+
+  /**
+   * @param bufferSizeLimit   max. number of bytes (approximately) queued for
+   *                          sending
+   * @param sendTimeLimitMillis max. time for sending a single message, before
+   *                          the connection gets closed
+   * @param overflowStrategy  how to keep the queued messages within the
+   *                          buffer size limit
+   */
+  public record SendSettings(
+    int bufferSizeLimit,
+    long sendTimeLimitMillis,
+    OverflowStrategy overflowStrategy
+  ) {
+    public SendSettings {
+      Objects.requireNonNull(overflowStrategy);
+    }
+  }
+
+  private record OutboundMessage(
+    WebSocketMessage<?> message,
+    int size,
+    boolean isPlayerState
+  ) {}
+
   private final WebSocketSession session;
 
-  public Client(WebSocketSession session) {
-    this.session = session;
+  private final SendSettings sendSettings;
+
+  private final Executor senderExecutor;
+
+  private final GameMetrics metrics;
+
+  private final MessageEncoding encoding;
+
+  // guarded by this
+  private final Deque<OutboundMessage> outboundQueue = new ArrayDeque<>();
+
+  // guarded by this
+  private long bufferedBytes = 0;
+
+  // guarded by this
+  private boolean senderActive = false;
+
+  // guarded by this (0 if no message is being sent at the moment)
+  private long sendStartNanos = 0;
+
+  // guarded by this
+  private boolean closed = false;
+
+  private final boolean deltaUpdates;
+
+  // guarded by this (delta protocol: version of the last sent state)
+  private long version = 0;
+
+  // guarded by this (delta protocol: state the client has acknowledged, or null)
+  private @Nullable JsonNode ackedState;
+
+  // guarded by this
+  private long ackedVersion = 0;
+
+  // guarded by this (delta protocol: sent states, which may still get acknowledged)
+  private final NavigableMap<Long, JsonNode> unackedStates = new TreeMap<>();
+
+  // guarded by this (delta protocol: to be resent as snapshot on request)
+  private @Nullable SerializedPlayerState lastState;
+
+  private static final int MAX_UNACKED_STATES = 32;
+
+  public Client(
+    WebSocketSession session,
+    SendSettings sendSettings,
+    Executor senderExecutor,
+    GameMetrics metrics
+  ) {
+    this.session = Objects.requireNonNull(session);
+    this.sendSettings = Objects.requireNonNull(sendSettings);
+    this.senderExecutor = Objects.requireNonNull(senderExecutor);
+    this.metrics = Objects.requireNonNull(metrics);
+    this.encoding = MessageEncoding.forSubprotocol(
+      session.getAcceptedProtocol()
+    );
+    this.deltaUpdates = MessageEncoding.isDeltaSubprotocol(
+      session.getAcceptedProtocol()
+    );
   }
 
   public String getId() {
     return session.getId();
   }
 
+  public MessageEncoding getEncoding() {
+    return encoding;
+  }
+
   public void send(PlayerState state) {
-    String stateJson = JSONHelper.objectToJsonString(state);
-    log.info("Sending player state to client {}: {}", getId(), stateJson);
-    try {
-      // synchronized, because WebSocketSession.sendMessage(.) does not allow concurrent sending
-      synchronized (this) {
-        session.sendMessage(new TextMessage(stateJson));
+    send(SerializedPlayerState.of(state));
+  }
+
+  public void send(SerializedPlayerState state) {
+    if (deltaUpdates) {
+      sendDelta(state);
+      return;
+    }
+    WebSocketMessage<?> message = state.getMessage(encoding);
+    int size = state.getPayloadSize(encoding);
+    if (encoding == MessageEncoding.JSON) {
+      log.info(
+        "Sending player state to client {}: {}",
+        getId(),
+        state.getJson()
+      );
+    } else {
+      log.info(
+        "Sending player state {} to client {} ({}, {} bytes)",
+        state.getState().getState(),
+        getId(),
+        encoding,
+        size
+      );
+    }
+    enqueue(new OutboundMessage(message, size, true));
+  }
+
+  private synchronized void sendDelta(SerializedPlayerState state) {
+    lastState = state;
+    version++;
+    JsonNode tree = state.getTree();
+
+    String type = "patch";
+    WebSocketMessage<?> message = null;
+    JsonNode base = ackedState;
+    if (base != null) {
+      ObjectNode patchMessage = createDeltaMessage(type);
+      patchMessage.put("base", ackedVersion);
+      patchMessage.set("patch", JsonDiff.diff(base, tree));
+      message = encoding.toMessage(patchMessage);
+      if (getSize(message) >= state.getPayloadSize(encoding)) {
+        // not worth it (e.g. most of the state has changed)
+        message = null;
       }
-    } catch (IOException | RuntimeException e) {
-      log.error("Exception when updating client {}", getId(), e);
+    }
+    if (message == null) {
+      type = "snapshot";
+      ObjectNode snapshotMessage = createDeltaMessage(type);
+      snapshotMessage.set("state", tree);
+      message = encoding.toMessage(snapshotMessage);
+    }
+
+    unackedStates.put(version, tree);
+    if (unackedStates.size() > MAX_UNACKED_STATES) {
+      // the client does not acknowledge: such old states will not be needed
+      unackedStates.pollFirstEntry();
+    }
+
+    int size = getSize(message);
+    log.info(
+      "Sending player state {} to client {} ({} version {}, {} bytes)",
+      state.getState().getState(),
+      getId(),
+      type,
+      version,
+      size
+    );
+    // note: patches are relative to the acknowledged state (not to the
+    // previous one), so superseded ones can still be dropped
+    enqueue(new OutboundMessage(message, size, true));
+  }
+
+  // note: caller must hold the lock
+  private ObjectNode createDeltaMessage(String type) {
+    ObjectNode message = JsonNodeFactory.instance.objectNode();
+    message.put("type", type);
+    message.put("version", version);
+    return message;
+  }
+
+  private static int getSize(WebSocketMessage<?> message) {
+    // (the payload length of a text message would need to encode it)
+    return message instanceof TextMessage textMessage
+      ? textMessage.getPayload().length()
+      : message.getPayloadLength();
+  }
+
+  /**
+   * Delta protocol: the client has received the state with the given version.
+   */
+  public synchronized void acknowledge(long acknowledgedVersion) {
+    JsonNode state = unackedStates.get(acknowledgedVersion);
+    if (state == null) {
+      // unknown or outdated version
+      return;
+    }
+    ackedState = state;
+    ackedVersion = acknowledgedVersion;
+    unackedStates.headMap(acknowledgedVersion, true).clear();
+  }
+
+  /**
+   * Delta protocol: the client could not apply a patch, so it needs a full
+   * snapshot of the current state.
+   */
+  public synchronized void requestSnapshot() {
+    ackedState = null;
+    unackedStates.clear();
+    SerializedPlayerState state = lastState;
+    if (state != null) {
+      sendDelta(state);
     }
   }
 
   public void ping() {
-    try {
-      // synchronized, because WebSocketSession.sendMessage(.) does not allow concurrent sending
+    synchronized (this) {
+      if (senderActive) {
+        // still sending, so the connection is active anyway (unless the send is stuck)
+        checkSendTimeLimit();
+        return;
+      }
+    }
+    enqueue(new OutboundMessage(new PingMessage(), 0, false));
+  }
+
+  private synchronized void enqueue(OutboundMessage outboundMessage) {
+    if (closed) {
+      return;
+    }
+    if (
+      outboundMessage.isPlayerState() &&
+      sendSettings.overflowStrategy() == OverflowStrategy.DROP_SUPERSEDED
+    ) {
+      dropQueuedPlayerStates();
+    }
+    outboundQueue.add(outboundMessage);
+    bufferedBytes += outboundMessage.size();
+    if (bufferedBytes > sendSettings.bufferSizeLimit()) {
+      log.warn(
+        "Closing client {}, because the send buffer limit has been exceeded",
+        getId()
+      );
+      closeAsync();
+      return;
+    }
+    if (!checkSendTimeLimit() && !senderActive) {
+      senderActive = true;
+      senderExecutor.execute(this::sendQueuedMessages);
+    }
+  }
+
+  // note: caller must hold the lock
+  private void dropQueuedPlayerStates() {
+    var it = outboundQueue.iterator();
+    while (it.hasNext()) {
+      OutboundMessage queued = it.next();
+      if (queued.isPlayerState()) {
+        it.remove();
+        bufferedBytes -= queued.size();
+      }
+    }
+  }
+
+  // note: caller must hold the lock
+  // returns true if the client is being closed, because sending takes too long
+  private boolean checkSendTimeLimit() {
+    if (
+      sendStartNanos != 0 &&
+      System.nanoTime() - sendStartNanos >
+      TimeUnit.MILLISECONDS.toNanos(sendSettings.sendTimeLimitMillis())
+    ) {
+      log.warn(
+        "Closing client {}, because the send time limit has been exceeded",
+        getId()
+      );
+      closeAsync();
+      return true;
+    }
+    return false;
+  }
+
+  // note: caller must hold the lock
+  private void closeAsync() {
+    closed = true;
+    // closing from another thread: the lock of this client is held, and the
+    // caller (e.g. a game) must not wait for a stuck connection
+    senderExecutor.execute(this::closeAsUnreliable);
+  }
+
+  private void sendQueuedMessages() {
+    while (true) {
+      OutboundMessage outboundMessage;
+      long startNanos = System.nanoTime();
       synchronized (this) {
-        session.sendMessage(new PingMessage());
+        outboundMessage = outboundQueue.poll();
+        if (outboundMessage == null || closed) {
+          senderActive = false;
+          return;
+        }
+        sendStartNanos = startNanos;
+      }
+      try {
+        // only the sender task sends, because WebSocketSession.sendMessage(.) does not allow concurrent sending
+        session.sendMessage(outboundMessage.message());
+        metrics.recordSend(System.nanoTime() - startNanos);
+      } catch (IOException | RuntimeException e) {
+        log.error("Exception when sending to client {}", getId(), e);
+        metrics.recordSendFailure();
+      } finally {
+        synchronized (this) {
+          if (!closed) {
+            bufferedBytes -= outboundMessage.size();
+          }
+          sendStartNanos = 0;
+        }
       }
+    }
+  }
+
+  private void closeAsUnreliable() {
+    discardPendingMessages();
+    try {
+      session.close(CloseStatus.SESSION_NOT_RELIABLE);
     } catch (IOException | RuntimeException e) {
-      log.warn("Exception when pinging client {}", getId(), e);
+      log.warn("Exception when closing client {}", getId(), e);
     }
   }
+
+  /**
+   * Drops all messages which have not been sent yet. Called when the
+   * connection has been closed.
+   */
+  public synchronized void discardPendingMessages() {
+    closed = true;
+    outboundQueue.clear();
+    bufferedBytes = 0;
+  }
 }
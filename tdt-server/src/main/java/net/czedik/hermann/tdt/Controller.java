@@ -1,15 +1,16 @@
 package net.czedik.hermann.tdt;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -20,8 +21,22 @@ public class Controller {
 
   private final GameManager gameManager;
 
-  public Controller(GameManager gameManager) {
+  private final ImageCache imageCache;
+
+  private final ThumbnailGenerator thumbnailGenerator;
+
+  private final GameStore gameStore;
+
+  public Controller(
+    GameManager gameManager,
+    ImageCache imageCache,
+    ThumbnailGenerator thumbnailGenerator,
+    GameStore gameStore
+  ) {
     this.gameManager = gameManager;
+    this.imageCache = imageCache;
+    this.thumbnailGenerator = thumbnailGenerator;
+    this.gameStore = gameStore;
   }
 
   @PostMapping(
@@ -39,16 +54,169 @@ public class Controller {
     return response;
   }
 
+  /**
+   * @param size requested width: a smaller variant of the image gets sent,
+   *             if there is one which is at least this wide
+   */
   @GetMapping(path = "/image/{gameId:\\w+}/{imageId:[\\w\\-]+}.png")
   public void getImage(
+    HttpServletRequest request,
     HttpServletResponse response,
     @PathVariable String gameId,
-    @PathVariable String imageId
+    @PathVariable String imageId,
+    @RequestParam(required = false) @Nullable Integer size
+  ) throws IOException {
+    String imageName = imageId + ".png";
+    String variantName = null;
+    if (size != null) {
+      Integer width = thumbnailGenerator.selectWidth(size);
+      if (width != null) {
+        variantName = ThumbnailGenerator.variantName(imageName, width);
+      }
+    }
+    if (gameStore.isArchived(gameId)) {
+      sendArchivedImage(request, response, gameId, imageName, variantName);
+      return;
+    }
+    // drawings are shared by all games, and cached by name: only the ones
+    // which the requested game contains may be served
+    if (!gameManager.hasImage(gameId, imageName)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    if (
+      variantName != null &&
+      sendImageIfExists(request, response, gameId, variantName)
+    ) {
+      return;
+    }
+    // the variant has not been generated (yet): fall back to the original
+    if (!sendImageIfExists(request, response, gameId, imageName)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+  }
+
+  // the segment contains exactly the drawings of the game (and their
+  // variants), and is mapped: no need to check or fill the cache
+  private void sendArchivedImage(
+    HttpServletRequest request,
+    HttpServletResponse response,
+    String gameId,
+    String imageName,
+    @Nullable String variantName
+  ) throws IOException {
+    if (variantName != null) {
+      ByteBuffer variant = gameStore.readArchivedFile(gameId, variantName);
+      if (variant != null) {
+        ImageResponses.sendBytes(
+          request,
+          response,
+          variant,
+          ImageResponses.etagForImage(variantName)
+        );
+        return;
+      }
+    }
+    ByteBuffer image = gameStore.readArchivedFile(gameId, imageName);
+    if (image == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    ImageResponses.sendBytes(
+      request,
+      response,
+      image,
+      ImageResponses.etagForImage(imageName)
+    );
+  }
+
+  private boolean sendImageIfExists(
+    HttpServletRequest request,
+    HttpServletResponse response,
+    String gameId,
+    String imageName
+  ) throws IOException {
+    String etag = ImageResponses.etagForImage(imageName);
+    ByteBuffer cachedImage = imageCache.get(imageName);
+    if (cachedImage != null) {
+      ImageResponses.sendBytes(request, response, cachedImage, etag);
+      return true;
+    }
+    Path imagePath = gameManager.getGameDir(gameId).resolve(imageName);
+    try {
+      ImageResponses.sendFile(request, response, imagePath, etag);
+      return true;
+    } catch (NoSuchFileException e) {
+      // a shared variant, or the game may have been archived
+    }
+    if (ImageStore.isContentAddressed(imageName)) {
+      Path storedImagePath = gameStore.getImageStore().getPath(imageName);
+      try {
+        ImageResponses.sendFile(request, response, storedImagePath, etag);
+        return true;
+      } catch (NoSuchFileException e) {
+        // not generated (yet), or the game has been archived
+      }
+    }
+    ByteBuffer archivedImage = gameStore.readArchivedFile(gameId, imageName);
+    if (archivedImage == null) {
+      return false;
+    }
+    ImageResponses.sendBytes(request, response, archivedImage, etag);
+    return true;
+  }
+
+  /**
+   * Stories of a finished game (the same as the players get via the
+   * WebSocket). They never change, so they can be cached like the images.
+   */
+  @GetMapping(path = "/game/{gameId:\\w+}/stories")
+  public void getStories(
+    HttpServletRequest request,
+    HttpServletResponse response,
+    @PathVariable String gameId
   ) throws IOException {
-    response.setContentType(MediaType.IMAGE_PNG_VALUE);
-    Path imagePath = gameManager.getGameDir(gameId).resolve(imageId + ".png");
-    try (InputStream in = Files.newInputStream(imagePath)) {
-      StreamUtils.copy(in, response.getOutputStream());
+    String etag = "\"" + gameId + "-stories\"";
+    Path storiesPath = gameManager
+      .getGameDir(gameId)
+      .resolve(Game.STORIES_FILENAME);
+    try {
+      ImageResponses.sendFile(
+        request,
+        response,
+        storiesPath,
+        etag,
+        MediaType.APPLICATION_JSON_VALUE
+      );
+      return;
+    } catch (NoSuchFileException e) {
+      // archived, not written yet (or the game is not finished)
+    }
+    ByteBuffer archivedStories = gameStore.readArchivedFile(
+      gameId,
+      Game.STORIES_FILENAME
+    );
+    if (archivedStories != null) {
+      ImageResponses.sendBytes(
+        request,
+        response,
+        archivedStories,
+        etag,
+        MediaType.APPLICATION_JSON_VALUE
+      );
+      return;
+    }
+    byte[] stories = gameManager.getStories(gameId);
+    if (stories == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
     }
+    ImageResponses.sendBytes(
+      request,
+      response,
+      ByteBuffer.wrap(stories),
+      etag,
+      MediaType.APPLICATION_JSON_VALUE
+    );
   }
 }
@@ -0,0 +1,120 @@
+package net.czedik.hermann.tdt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A drawing which is received in several parts (partial WebSocket messages).
+ * <p>
+ * The parts are written to a temporary file as they arrive, so that only one
+ * part at a time needs to be held in memory. The content hash (which names the
+ * drawing in the {@link ImageStore}) is computed on the way, so the drawing
+ * does not need to be read again. Once complete, the file gets moved to the
+ * store (see {@link DrawingWriter#commit(Path, String, Path)}).
+ */
+public class DrawingUpload {
+
+  private static final Logger log = LoggerFactory.getLogger(
+    DrawingUpload.class
+  );
+
+  private final Path file;
+
+  private final long maxBytes;
+
+  private final FileChannel channel;
+
+  private final MessageDigest digest;
+
+  private long size = 0;
+
+  private @Nullable String contentHash;
+
+  /**
+   * @param file     temporary file (must not exist yet)
+   * @param maxBytes max. size of the drawing
+   */
+  public DrawingUpload(Path file, long maxBytes) throws IOException {
+    this.file = Objects.requireNonNull(file);
+    this.maxBytes = maxBytes;
+    this.channel = FileChannel.open(
+      file,
+      StandardOpenOption.CREATE_NEW,
+      StandardOpenOption.WRITE
+    );
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Appends the next part of the drawing.
+   *
+   * @return false if the drawing would exceed the max. size (nothing is
+   * written then)
+   */
+  public boolean append(ByteBuffer part) throws IOException {
+    if (size + part.remaining() > maxBytes) {
+      return false;
+    }
+    size += part.remaining();
+    digest.update(part.duplicate());
+    while (part.hasRemaining()) {
+      channel.write(part);
+    }
+    return true;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Completes the upload.
+   *
+   * @return the temporary file containing the whole drawing
+   */
+  public Path finish() throws IOException {
+    channel.close();
+    contentHash = HexFormat.of().formatHex(digest.digest());
+    return file;
+  }
+
+  /**
+   * @return hex encoded SHA-256 hash of the drawing (only after
+   * {@link #finish()})
+   */
+  public String getContentHash() {
+    if (contentHash == null) {
+      throw new IllegalStateException("Upload not finished");
+    }
+    return contentHash;
+  }
+
+  /**
+   * Discards the upload (e.g. when the connection gets closed before the
+   * drawing is complete).
+   */
+  public void abort() {
+    try {
+      channel.close();
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Cannot delete aborted upload {}", file, e);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package net.czedik.hermann.tdt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Commits uploaded drawings (see {@link DrawingUpload}) to the
+ * {@link ImageStore} on a small pool of I/O threads, so that no game lock is
+ * held while waiting for the disk.
+ * <p>
+ * The queue of pending writes is bounded: if the disk cannot keep up, the
+ * uploading thread commits the drawing itself, which slows down further
+ * uploads (backpressure).
+ */
+public class DrawingWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(
+    DrawingWriter.class
+  );
+
+  /**
+   * @param size       size of the drawing in bytes
+   * @param newDrawing false if the same drawing had already been stored (by
+   *                   any game)
+   */
+  public record CommittedDrawing(long size, boolean newDrawing) {}
+
+  private final ImageStore imageStore;
+
+  private final ImageCache imageCache;
+
+  private final ThreadPoolExecutor executor;
+
+  public DrawingWriter(
+    int threads,
+    int queueCapacity,
+    ImageStore imageStore,
+    ImageCache imageCache
+  ) {
+    this.imageStore = imageStore;
+    this.imageCache = imageCache;
+    executor = new ThreadPoolExecutor(
+      threads,
+      threads,
+      0L,
+      TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(queueCapacity),
+      DrawingWriter::runInCaller
+    );
+  }
+
+  // like CallerRunsPolicy, but does not silently drop drawings after shutdown
+  private static void runInCaller(Runnable task, ThreadPoolExecutor executor) {
+    if (executor.isShutdown()) {
+      throw new RejectedExecutionException("Drawing writer has been shut down");
+    }
+    task.run();
+  }
+
+  /**
+   * Asynchronously adds an uploaded drawing to the store (unless it is stored
+   * already), links it to its path in the game, and puts it into the
+   * {@link ImageCache}.
+   *
+   * @param imageName content-addressed name of the drawing (see
+   *                  {@link ImageStore#imageName(String)})
+   * @return future which completes when the drawing has been committed (or
+   * exceptionally, e.g. after shutdown)
+   */
+  public CompletableFuture<CommittedDrawing> commit(
+    Path uploadFile,
+    String imageName,
+    Path imagePath
+  ) {
+    try {
+      return commitAsync(uploadFile, imageName, imagePath);
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private CompletableFuture<CommittedDrawing> commitAsync(
+    Path uploadFile,
+    String imageName,
+    Path imagePath
+  ) {
+    return CompletableFuture.supplyAsync(
+      () -> {
+        try {
+          log.info("Committing drawing {}", imagePath);
+          boolean newDrawing = imageStore.addAndLink(
+            uploadFile,
+            imageName,
+            imagePath
+          );
+          long size = Files.size(imagePath);
+          if (imageCache.fits(size)) {
+            // players will load the drawing soon (at the latest when the game
+            // is finished); it has just been written (or is a popular one), so
+            // this is read from the page cache
+            imageCache.put(imageName, Files.readAllBytes(imagePath));
+          }
+          return new CommittedDrawing(size, newDrawing);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      },
+      executor
+    );
+  }
+
+  /**
+   * Waits until all queued drawings have been written.
+   */
+  public void shutdown() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+        log.warn("Timeout while waiting for drawings to be written");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -1,25 +1,21 @@
 package net.czedik.hermann.tdt;
 
-import java.io.BufferedOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.ByteChannel;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.EnumSet;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import net.czedik.hermann.tdt.actions.AccessAction;
 import net.czedik.hermann.tdt.actions.JoinAction;
@@ -30,12 +26,12 @@ import net.czedik.hermann.tdt.playerstate.FrontendStory;
 import net.czedik.hermann.tdt.playerstate.FrontendStoryElement;
 import net.czedik.hermann.tdt.playerstate.JoinState;
 import net.czedik.hermann.tdt.playerstate.PlayerState;
+import net.czedik.hermann.tdt.playerstate.SpectatorState;
 import net.czedik.hermann.tdt.playerstate.StoriesState;
 import net.czedik.hermann.tdt.playerstate.TypeState;
 import net.czedik.hermann.tdt.playerstate.WaitForGameStartState;
 import net.czedik.hermann.tdt.playerstate.WaitForPlayersState;
 import net.czedik.hermann.tdt.playerstate.WaitForRoundFinishState;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
@@ -48,6 +44,15 @@ public class Game {
 
   public static final String STATE_FILENAME = "state.json";
 
+  /**
+   * The stories of a finished game, as sent to the players (see
+   * {@link #getStoriesJson()})
+   */
+  public static final String STORIES_FILENAME = "stories.json";
+
+  // package-private for benchmarks
+  static final int MAX_JOURNAL_ENTRIES_BEFORE_SNAPSHOT = 100;
+
   public final String gameId;
 
   private final Path gameDir;
@@ -58,15 +63,72 @@ public class Game {
 
   private final Map<Player, Set<Client>> playerToClients = new HashMap<>();
 
+  private final Spectators spectators = new Spectators();
+
+  // whether the state has changed since it was published for the spectators
+  // (no states are published while there are no spectators)
+  private boolean spectatorStateOutdated = true;
+
+  // changes which have not yet been serialized for storage
+  private final List<GameJournal.Entry> unsavedJournalEntries =
+    new ArrayList<>();
+
+  // number of journal entries which are not contained in the stored snapshot
+  private int journalEntriesSinceSnapshot;
+
+  private boolean snapshotNeeded = false;
+
+  // whether the stories of the finished game still need to be stored
+  private boolean storiesSnapshotNeeded = false;
+
+  // the finished game never changes, so its state is only rendered once
+  private @Nullable SerializedPlayerState finishedState;
+
+  // indexes derived from the game state, which get updated with every event
+  // (so that the actions do not need to scan all players or stories)
+
+  private final Map<String, Integer> playerIndexById = new HashMap<>();
+
+  // storyPlayerMatrix[round][storyIndex] is the index of the player (inverse of the game matrix)
+  private int @Nullable [][] storyPlayerMatrix = null;
+
+  // indexes of the players who have not finished the current round yet
+  private final BitSet notFinishedPlayers = new BitSet();
+
+  // names of the drawings in the stories: concurrent, so that requests of
+  // the drawings can check it without the game lock (see hasImage())
+  private final Set<String> imageNames = ConcurrentHashMap.newKeySet();
+
+  // states which are identical for many players: computed once per change of the game state
+  private final Map<SharedState, PlayerState> sharedStates = new EnumMap<>(
+    SharedState.class
+  );
+
+  private enum SharedState {
+    WaitForPlayers,
+    WaitForGameStart,
+    FirstTypeRound,
+    WaitForRoundFinish,
+  }
+
   public Game(String gameId, Path gameDir, Player creator) {
-    this(gameId, gameDir, new GameState());
+    this(gameId, gameDir, new GameState(), 0);
     gameState.players.add(Objects.requireNonNull(creator));
+    rebuildIndexes();
+    snapshotNeeded = true;
   }
 
-  public Game(String gameId, Path gameDir, GameState gameState) {
+  public Game(
+    String gameId,
+    Path gameDir,
+    GameState gameState,
+    int journalEntriesSinceSnapshot
+  ) {
     this.gameId = Objects.requireNonNull(gameId);
     this.gameDir = Objects.requireNonNull(gameDir);
     this.gameState = Objects.requireNonNull(gameState);
+    this.journalEntriesSinceSnapshot = journalEntriesSinceSnapshot;
+    rebuildIndexes();
   }
 
   // returns whether the client has been added as a player to the game
@@ -95,17 +157,18 @@ public class Game {
   }
 
   private @Nullable Player getPlayerById(String playerId) {
-    return gameState.players
-      .stream()
-      .filter(p -> p.id().equals(playerId))
-      .findAny()
-      .orElse(null);
+    Integer playerIndex = playerIndexById.get(playerId);
+    return playerIndex != null ? gameState.players.get(playerIndex) : null;
+  }
+
+  private int getPlayerIndex(Player player) {
+    return Objects.requireNonNull(playerIndexById.get(player.id()));
   }
 
-  private PlayerState getStateForAccessByNewPlayer() {
+  private SerializedPlayerState getStateForAccessByNewPlayer() {
     return switch (gameState.state) {
-      case WaitingForPlayers -> new JoinState();
-      case Started -> new AlreadyStartedGameState();
+      case WaitingForPlayers -> SerializedPlayerState.of(new JoinState());
+      case Started -> SerializedPlayerState.of(new AlreadyStartedGameState());
       case Finished -> getFinishedState();
     };
   }
@@ -139,7 +202,7 @@ public class Game {
           joinAction.face(),
           false
         );
-        gameState.players.add(player);
+        apply(new GameEvent.PlayerJoined(player));
       }
       addClientForPlayer(client, player);
       updateStateForAllPlayers();
@@ -155,14 +218,107 @@ public class Game {
     }
   }
 
-  private void updateStateForAllPlayers() {
+  /**
+   * Adds a read-only client, which gets the {@link SpectatorState}.
+   */
+  public void spectate(Client client) {
+    log.info(
+      "Game {}: Client {} is spectating (total spectators: {})",
+      gameId,
+      client.getId(),
+      spectators.size() + 1
+    );
+    spectators.add(client);
+    if (spectatorStateOutdated) {
+      publishSpectatorState();
+    }
+  }
+
+  private void publishSpectatorState() {
+    if (spectators.isEmpty()) {
+      spectatorStateOutdated = true;
+      return;
+    }
+    spectators.publish(getSpectatorState());
+    spectatorStateOutdated = false;
+  }
+
+  private SpectatorState getSpectatorState() {
+    List<PlayerInfo> players = mapPlayersToPlayerInfos(gameState.players);
+    return switch (gameState.state) {
+      case WaitingForPlayers -> new SpectatorState(
+        "waitingForPlayers",
+        players,
+        0,
+        0,
+        List.of(),
+        null
+      );
+      case Started -> new SpectatorState(
+        "started",
+        players,
+        gameState.round + 1,
+        Objects.requireNonNull(gameState.gameMatrix).length,
+        mapPlayersToPlayerInfos(getNotFinishedPlayers()),
+        null
+      );
+      case Finished -> {
+        int rounds = Objects.requireNonNull(gameState.gameMatrix).length;
+        yield new SpectatorState(
+          "finished",
+          players,
+          rounds,
+          rounds,
+          List.of(),
+          getFinishedStories()
+        );
+      }
+    };
+  }
+
+  // package-private for benchmarks
+  void updateStateForAllPlayers() {
+    // the spectators get their state in a separate stage (see Spectators)
+    publishSpectatorState();
+
+    if (gameState.state == GameState.State.Finished) {
+      // all players see the same stories
+      broadcast(getFinishedState());
+      return;
+    }
+
+    // many players get identical states (e.g. while waiting for others), so
+    // every distinct state is only serialized once and shared by all its recipients
+    // note: identical states are the same instances (see sharedStates), so
+    // comparing by identity is enough (and avoids hashing large states)
+    Map<PlayerState, SerializedPlayerState> serializedStates =
+      new IdentityHashMap<>();
     for (Player player : gameState.players) {
-      updateStateForPlayer(player);
+      Set<Client> clients = playerToClients.get(player);
+      if (clients == null || clients.isEmpty()) {
+        continue;
+      }
+      SerializedPlayerState serializedState = serializedStates.computeIfAbsent(
+        getPlayerState(player),
+        SerializedPlayerState::of
+      );
+      for (Client client : clients) {
+        client.send(serializedState);
+      }
+    }
+  }
+
+  private void broadcast(SerializedPlayerState serializedState) {
+    for (Client client : clientToPlayer.keySet()) {
+      client.send(serializedState);
     }
   }
 
   private void updateStateForPlayer(Player player) {
-    PlayerState playerState = getPlayerState(player);
+    SerializedPlayerState playerState =
+      gameState.state == GameState.State.Finished
+        ? getFinishedState()
+        : SerializedPlayerState.of(getPlayerState(player));
     for (Client client : playerToClients.getOrDefault(
       player,
       Collections.emptySet()
@@ -171,16 +327,55 @@ public class Game {
     }
   }
 
-  private PlayerState getPlayerState(Player player) {
+  // package-private for benchmarks
+  PlayerState getPlayerState(Player player) {
     return switch (gameState.state) {
       case WaitingForPlayers -> getWaitingForPlayersState(player);
       case Started -> getStartedState(player);
-      case Finished -> getFinishedState();
+      case Finished -> getFinishedState().getState();
     };
   }
 
-  private PlayerState getFinishedState() {
-    return new StoriesState(mapStoriesToFrontendStories());
+  private SerializedPlayerState getFinishedState() {
+    if (gameState.state != GameState.State.Finished) {
+      throw new IllegalStateException(
+        "Only valid to call this method in finished state"
+      );
+    }
+    SerializedPlayerState state = finishedState;
+    if (state == null) {
+      state = SerializedPlayerState.of(
+        new StoriesState(mapStoriesToFrontendStories())
+      );
+      finishedState = state;
+    }
+    return state;
+  }
+
+  private List<FrontendStory> getFinishedStories() {
+    return ((StoriesState) getFinishedState().getState()).stories();
+  }
+
+  /**
+   * @return the stories of the finished game (the JSON of the
+   * {@link StoriesState}), or null if the game is not finished
+   */
+  public byte @Nullable [] getStoriesJson() {
+    if (gameState.state != GameState.State.Finished) {
+      return null;
+    }
+    return getFinishedState().getJson().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Requests the stories of a finished game to be stored with the next state
+   * update (for games which have been finished before the stories were
+   * stored).
+   */
+  void requestStoriesSnapshot() {
+    if (gameState.state == GameState.State.Finished) {
+      storiesSnapshotNeeded = true;
+    }
   }
 
   private List<FrontendStory> mapStoriesToFrontendStories() {
@@ -237,13 +432,21 @@ public class Game {
   }
 
   private PlayerState getWaitForRoundFinishedState() {
-    List<Player> playersNotFinished = getNotFinishedPlayers();
-    return new WaitForRoundFinishState(
-      mapPlayersToPlayerInfos(playersNotFinished),
-      isTypeRound()
+    return getSharedState(SharedState.WaitForRoundFinish, () ->
+      new WaitForRoundFinishState(
+        mapPlayersToPlayerInfos(getNotFinishedPlayers()),
+        isTypeRound()
+      )
     );
   }
 
+  private PlayerState getSharedState(
+    SharedState sharedState,
+    Supplier<PlayerState> stateSupplier
+  ) {
+    return sharedStates.computeIfAbsent(sharedState, s -> stateSupplier.get());
+  }
+
   private PlayerState getDrawState(Player player) {
     int storyIndex = getCurrentStoryIndexForPlayer(player);
     String text = getStoryByIndex(storyIndex).elements[
@@ -263,7 +466,9 @@ public class Game {
     int roundOneBased = gameState.round + 1;
     int rounds = Objects.requireNonNull(gameState.gameMatrix).length;
     if (gameState.round == 0) {
-      return new TypeState(roundOneBased, rounds);
+      return getSharedState(SharedState.FirstTypeRound, () ->
+        new TypeState(roundOneBased, rounds)
+      );
     } else {
       int storyIndex = getCurrentStoryIndexForPlayer(player);
       String imageFilename = getStoryByIndex(storyIndex).elements[
@@ -286,11 +491,14 @@ public class Game {
       "Only valid to call this method in started state"
     );
 
-    List<PlayerInfo> playerInfos = mapPlayersToPlayerInfos(gameState.players);
     if (player.isCreator()) {
-      return new WaitForPlayersState(playerInfos);
+      return getSharedState(SharedState.WaitForPlayers, () ->
+        new WaitForPlayersState(mapPlayersToPlayerInfos(gameState.players))
+      );
     } else {
-      return new WaitForGameStartState(playerInfos);
+      return getSharedState(SharedState.WaitForGameStart, () ->
+        new WaitForGameStartState(mapPlayersToPlayerInfos(gameState.players))
+      );
     }
   }
 
@@ -303,12 +511,8 @@ public class Game {
   }
 
   private Player getPlayerForStoryInRound(int storyIndex, int roundNo) {
-    int[][] gameMatrix = Objects.requireNonNull(gameState.gameMatrix);
-    int previousPlayerIndexForStory = ArrayUtils.indexOf(
-      gameMatrix[roundNo],
-      storyIndex
-    );
-    return gameState.players.get(previousPlayerIndexForStory);
+    int[][] storyPlayers = Objects.requireNonNull(storyPlayerMatrix);
+    return gameState.players.get(storyPlayers[roundNo][storyIndex]);
   }
 
   private Story getStoryByIndex(int storyIndex) {
@@ -316,10 +520,15 @@ public class Game {
   }
 
   private List<Player> getNotFinishedPlayers() {
-    return gameState.players
-      .stream()
-      .filter(p -> !hasPlayerFinishedCurrentRound(p))
-      .collect(Collectors.toList());
+    List<Player> players = new ArrayList<>(notFinishedPlayers.cardinality());
+    for (
+      int i = notFinishedPlayers.nextSetBit(0);
+      i >= 0;
+      i = notFinishedPlayers.nextSetBit(i + 1)
+    ) {
+      players.add(gameState.players.get(i));
+    }
+    return players;
   }
 
   private boolean hasPlayerFinishedCurrentRound(Player player) {
@@ -340,6 +549,15 @@ public class Game {
   }
 
   public void clientDisconnected(Client client) {
+    if (spectators.remove(client)) {
+      log.info(
+        "Game {}: Spectator client {} disconnected",
+        gameId,
+        client.getId()
+      );
+      return;
+    }
+
     Player player = clientToPlayer.remove(client);
     if (player == null) {
       log.info(
@@ -365,7 +583,7 @@ public class Game {
     if (gameState.state == GameState.State.WaitingForPlayers) {
       if (!player.isCreator() && clientsOfPlayer.isEmpty()) {
         log.info("Game {}: Player {} has left the game", gameId, player.id());
-        gameState.players.remove(player);
+        apply(new GameEvent.PlayerLeft(player.id()));
         playerToClients.remove(player);
         updateStateForAllPlayers();
       }
@@ -406,17 +624,12 @@ public class Game {
 
   private void startGame() {
     log.info("Game {}: Starting", gameId);
-    gameState.state = GameState.State.Started;
-
-    gameState.gameMatrix = GameRoundsGenerator.generate(
-      gameState.players.size()
+    apply(
+      new GameEvent.GameStarted(
+        GameRoundsGenerator.generate(gameState.players.size())
+      )
     );
 
-    gameState.stories = new Story[gameState.players.size()];
-    Arrays.setAll(gameState.stories, i -> new Story(gameState.players.size()));
-
-    storeState();
-
     updateStateForAllPlayers();
   }
 
@@ -451,8 +664,13 @@ public class Game {
       text = text.substring(0, maxTextLength);
     }
 
-    Story story = getCurrentStoryForPlayer(player);
-    story.elements[gameState.round] = StoryElement.createTextElement(text);
+    apply(
+      new GameEvent.TextTyped(
+        getCurrentStoryIndexForPlayer(player),
+        gameState.round,
+        text
+      )
+    );
 
     checkAndHandleRoundFinished();
 
@@ -465,13 +683,11 @@ public class Game {
 
   private int getCurrentStoryIndexForPlayer(Player player) {
     int[][] gameMatrix = Objects.requireNonNull(gameState.gameMatrix);
-    return gameMatrix[gameState.round][gameState.players.indexOf(player)];
+    return gameMatrix[gameState.round][getPlayerIndex(player)];
   }
 
   private boolean isCurrentRoundFinished() {
-    return Arrays.stream(gameState.stories).allMatch(
-      s -> s.elements[gameState.round] != null
-    );
+    return notFinishedPlayers.isEmpty();
   }
 
   private boolean isTypeRound() {
@@ -486,7 +702,30 @@ public class Game {
     return roundNo % 2 == 0;
   }
 
-  public void draw(Client client, ByteBuffer image) throws IOException {
+  /**
+   * A drawing which has been accepted, but which still needs to be written to
+   * disk before it can be committed to the game (see
+   * {@link #commitDrawing(PendingDrawing)}).
+   */
+  public record PendingDrawing(
+    Player player,
+    int storyIndex,
+    int round,
+    String imageName,
+    Path imagePath
+  ) {}
+
+  /**
+   * Validates a drawing upload of the given client.
+   *
+   * @param imageName content-addressed name of the drawing (see
+   *                  {@link ImageStore#imageName(String)})
+   * @return the drawing to be written, or null if the client cannot draw now
+   */
+  public @Nullable PendingDrawing prepareDrawing(
+    Client client,
+    String imageName
+  ) {
     Player player = clientToPlayer.get(client);
     if (player == null) {
       log.warn(
@@ -494,11 +733,11 @@ public class Game {
         gameId,
         client.getId()
       );
-      return;
+      return null;
     }
     if (gameState.state != GameState.State.Started) {
       log.warn("Game {}: Ignoring draw in state {}", gameId, gameState.state);
-      return;
+      return null;
     }
     if (!isDrawRound()) {
       log.warn(
@@ -506,25 +745,51 @@ public class Game {
         gameId,
         gameState.round
       );
-      return;
+      return null;
     }
 
-    Story story = getCurrentStoryForPlayer(player);
+    return new PendingDrawing(
+      player,
+      getCurrentStoryIndexForPlayer(player),
+      gameState.round,
+      imageName,
+      gameDir.resolve(imageName)
+    );
+  }
 
-    String imageName = UUID.randomUUID().toString() + ".png";
-    Path imagePath = gameDir.resolve(imageName);
+  /**
+   * @return whether the stories of the game contain the drawing (may be
+   * called without holding the game lock)
+   */
+  public boolean hasImage(String imageName) {
+    return imageNames.contains(imageName);
+  }
 
-    try (
-      ByteChannel channel = Files.newByteChannel(
-        imagePath,
-        EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
-      )
+  /**
+   * Commits a drawing after it has been written to disk.
+   */
+  public void commitDrawing(PendingDrawing drawing) {
+    if (
+      gameState.state != GameState.State.Started ||
+      gameState.round != drawing.round()
     ) {
-      channel.write(image);
+      log.warn(
+        "Game {}: Ignoring drawing {} of player {} for round {} (current round: {})",
+        gameId,
+        drawing.imageName(),
+        drawing.player().id(),
+        drawing.round(),
+        gameState.round
+      );
+      return;
     }
 
-    story.elements[gameState.round] = StoryElement.createImageElement(
-      imageName
+    apply(
+      new GameEvent.ImageDrawn(
+        drawing.storyIndex(),
+        drawing.round(),
+        drawing.imageName()
+      )
     );
 
     checkAndHandleRoundFinished();
@@ -534,32 +799,212 @@ public class Game {
 
   private void checkAndHandleRoundFinished() {
     if (isCurrentRoundFinished()) {
-      gameState.round++;
+      int nextRound = gameState.round + 1;
+      boolean gameFinished =
+        nextRound >= Objects.requireNonNull(gameState.gameMatrix).length;
+      apply(
+        new GameEvent.RoundAdvanced(
+          nextRound,
+          gameFinished ? GameState.State.Finished : GameState.State.Started
+        )
+      );
+      if (gameFinished) {
+        storiesSnapshotNeeded = true;
+      }
+    }
+  }
+
+  private void apply(GameEvent event) {
+    event.applyTo(gameState);
+    updateIndexes(event);
+    gameState.journalSeq++;
+    unsavedJournalEntries.add(
+      new GameJournal.Entry(gameState.journalSeq, event)
+    );
+  }
+
+  private void updateIndexes(GameEvent event) {
+    sharedStates.clear();
+    switch (event) {
+      case GameEvent.PlayerJoined joined -> playerIndexById.put(
+        joined.player().id(),
+        gameState.players.size() - 1
+      );
+      case GameEvent.PlayerLeft _ -> rebuildPlayerIndexes();
+      case GameEvent.GameStarted _ -> rebuildRoundIndexes();
+      case GameEvent.TextTyped typed -> storyElementAdded(
+        typed.storyIndex(),
+        typed.round()
+      );
+      case GameEvent.ImageDrawn drawn -> {
+        imageNames.add(drawn.imageFilename());
+        storyElementAdded(drawn.storyIndex(), drawn.round());
+      }
+      case GameEvent.RoundAdvanced _ -> rebuildNotFinishedPlayers();
+    }
+  }
+
+  private void storyElementAdded(int storyIndex, int round) {
+    if (round == gameState.round) {
+      notFinishedPlayers.clear(
+        Objects.requireNonNull(storyPlayerMatrix)[round][storyIndex]
+      );
+    }
+  }
+
+  private void rebuildIndexes() {
+    rebuildPlayerIndexes();
+    rebuildRoundIndexes();
+    rebuildImageNames();
+  }
 
-      if (isGameFinished()) {
-        gameState.state = GameState.State.Finished;
+  private void rebuildImageNames() {
+    imageNames.clear();
+    Story[] stories = gameState.stories;
+    if (stories == null) {
+      return;
+    }
+    for (Story story : stories) {
+      for (StoryElement element : story.elements) {
+        // elements of the rounds which have not been played yet are null
+        if (element != null && "image".equals(element.type)) {
+          imageNames.add(element.content);
+        }
       }
+    }
+  }
 
-      storeState();
+  private void rebuildPlayerIndexes() {
+    playerIndexById.clear();
+    for (int i = 0; i < gameState.players.size(); i++) {
+      playerIndexById.put(gameState.players.get(i).id(), i);
     }
   }
 
-  private boolean isGameFinished() {
+  private void rebuildRoundIndexes() {
+    int[][] gameMatrix = gameState.gameMatrix;
+    if (gameMatrix == null) {
+      storyPlayerMatrix = null;
+      notFinishedPlayers.clear();
+      return;
+    }
+    int[][] storyPlayers = new int[gameMatrix.length][];
+    for (int round = 0; round < gameMatrix.length; round++) {
+      storyPlayers[round] = new int[gameMatrix[round].length];
+      for (
+        int playerIndex = 0;
+        playerIndex < gameMatrix[round].length;
+        playerIndex++
+      ) {
+        storyPlayers[round][gameMatrix[round][playerIndex]] = playerIndex;
+      }
+    }
+    storyPlayerMatrix = storyPlayers;
+    rebuildNotFinishedPlayers();
+  }
+
+  private void rebuildNotFinishedPlayers() {
+    notFinishedPlayers.clear();
+    if (gameState.state != GameState.State.Started) {
+      return;
+    }
+    int[][] storyPlayers = Objects.requireNonNull(storyPlayerMatrix);
+    Story[] stories = Objects.requireNonNull(gameState.stories);
+    for (int storyIndex = 0; storyIndex < stories.length; storyIndex++) {
+      if (stories[storyIndex].elements[gameState.round] == null) {
+        notFinishedPlayers.set(storyPlayers[gameState.round][storyIndex]);
+      }
+    }
+  }
+
+  public Path getGameDir() {
+    return gameDir;
+  }
+
+  public GameState.State getState() {
+    return gameState.state;
+  }
+
+  public int getPlayerCount() {
+    return gameState.players.size();
+  }
+
+  public int getRound() {
+    return gameState.round;
+  }
+
+  public boolean isStateChanged() {
     return (
-      gameState.round >= Objects.requireNonNull(gameState.gameMatrix).length
+      snapshotNeeded ||
+      storiesSnapshotNeeded ||
+      !unsavedJournalEntries.isEmpty()
     );
   }
 
-  public void storeState() {
-    log.info("Game {}: Storing state", gameId);
-    try (
-      OutputStream out = new BufferedOutputStream(
-        Files.newOutputStream(gameDir.resolve(STATE_FILENAME))
-      )
-    ) {
-      JSONHelper.objectMapper.writeValue(out, gameState);
-    } catch (IOException e) {
-      log.error("Game {}: Error storing state", gameId, e);
+  /**
+   * Changes of the game state, serialized for storage: either a full snapshot
+   * (which replaces the state file and the journal), or entries which get
+   * appended to the journal. Additionally the stories, once the game is
+   * finished (see {@link #STORIES_FILENAME}).
+   */
+  public record StateUpdate(
+    byte @Nullable [] snapshot,
+    byte @Nullable [] journalEntries,
+    byte @Nullable [] stories
+  ) {
+    /**
+     * @return number of bytes to be written
+     */
+    public long size() {
+      return (
+        (snapshot != null ? snapshot.length : 0) +
+        (journalEntries != null ? journalEntries.length : 0) +
+        (stories != null ? stories.length : 0)
+      );
+    }
+  }
+
+  /**
+   * Serializes the changes since the last call for storage. A snapshot is
+   * created, if the journal has grown too long, the game is finished or if
+   * compaction is requested (e.g. when the game gets unloaded).
+   *
+   * @return null if there is nothing to store
+   */
+  public @Nullable StateUpdate takeStateUpdate(boolean compact) {
+    journalEntriesSinceSnapshot += unsavedJournalEntries.size();
+    boolean snapshot =
+      snapshotNeeded ||
+      journalEntriesSinceSnapshot >= MAX_JOURNAL_ENTRIES_BEFORE_SNAPSHOT ||
+      (journalEntriesSinceSnapshot > 0 &&
+        (compact || gameState.state == GameState.State.Finished));
+    byte[] stories = null;
+    if (storiesSnapshotNeeded) {
+      stories = getStoriesJson();
+      storiesSnapshotNeeded = false;
+    }
+    StateUpdate update;
+    if (snapshot) {
+      log.info("Game {}: Serializing snapshot of state", gameId);
+      update = new StateUpdate(
+        JSONHelper.objectMapper.writeValueAsBytes(gameState),
+        null,
+        stories
+      );
+      journalEntriesSinceSnapshot = 0;
+      snapshotNeeded = false;
+    } else if (!unsavedJournalEntries.isEmpty()) {
+      update = new StateUpdate(
+        null,
+        GameJournal.serialize(unsavedJournalEntries),
+        stories
+      );
+    } else if (stories != null) {
+      update = new StateUpdate(null, null, stories);
+    } else {
+      update = null;
     }
+    unsavedJournalEntries.clear();
+    return update;
   }
 }
@@ -0,0 +1,353 @@
+package net.czedik.hermann.tdt;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of all games (in both tiers of the {@link GameStore}), e.g.
+ * for administrative views and retention.
+ * <p>
+ * On startup the index is loaded from a compact snapshot file, so it can be
+ * queried right away. In the background, all games are rescanned on a
+ * fork/join pool (one task per group of game directories), and the results
+ * are merged into the index. Changes of games are added incrementally, when
+ * their state gets stored (see {@link GameLoader}).
+ */
+@Component
+public class GameCatalog {
+
+  private static final Logger log = LoggerFactory.getLogger(GameCatalog.class);
+
+  private static final int SNAPSHOT_MAGIC = 0x54444343; // "TDCC"
+
+  private static final int SNAPSHOT_VERSION = 1;
+
+  // number of archived games per scan task
+  private static final int ARCHIVED_GAMES_PER_TASK = 1024;
+
+  /**
+   * @param bytes              total size of the stored files (between scans,
+   *                           the sizes of everything written since are
+   *                           added, so this is an approximation)
+   * @param lastModifiedMillis when the game has been changed the last time
+   */
+  public record Entry(
+    String gameId,
+    GameState.State state,
+    int players,
+    int round,
+    long lastModifiedMillis,
+    long bytes
+  ) {
+    public Entry {
+      Objects.requireNonNull(gameId);
+      Objects.requireNonNull(state);
+    }
+  }
+
+  private final GameStore gameStore;
+
+  private final Path snapshotFile;
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  // whether entries have changed since the last snapshot
+  private final AtomicBoolean changed = new AtomicBoolean(false);
+
+  private final ForkJoinPool scanPool;
+
+  private final CompletableFuture<Void> scan;
+
+  /**
+   * @param scanThreads number of threads for scanning the games (0: number of
+   *                    processors)
+   */
+  public GameCatalog(
+    @Value("${storage.dir}") String storageDir,
+    @Value("${catalog.scan-threads:0}") int scanThreads,
+    GameStore gameStore
+  ) {
+    this.gameStore = gameStore;
+    snapshotFile = Path.of(storageDir)
+      .toAbsolutePath()
+      .normalize()
+      .resolve("catalog.bin");
+    loadSnapshot();
+    scanPool = new ForkJoinPool(
+      scanThreads > 0 ? scanThreads : Runtime.getRuntime().availableProcessors()
+    );
+    // startup does not wait for the scan: until it is complete, the snapshot is used
+    scan = CompletableFuture.runAsync(this::rescan, scanPool);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scanPool.shutdownNow();
+    writeSnapshotIfChanged();
+  }
+
+  public @Nullable Entry get(String gameId) {
+    return entries.get(gameId);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return all entries matching the filter (in no particular order)
+   */
+  public List<Entry> query(Predicate<Entry> filter) {
+    return entries.values().stream().filter(filter).toList();
+  }
+
+  /**
+   * @return future which completes once the games have been scanned
+   */
+  public CompletableFuture<Void> getScan() {
+    return scan;
+  }
+
+  /**
+   * Records a change of a game, whose state is being stored.
+   *
+   * @param writtenBytes size of the stored changes
+   */
+  public void update(Game game, long writtenBytes) {
+    entries.compute(game.gameId, (gameId, previous) ->
+      new Entry(
+        gameId,
+        game.getState(),
+        game.getPlayerCount(),
+        game.getRound(),
+        System.currentTimeMillis(),
+        (previous != null ? previous.bytes() : 0) + writtenBytes
+      )
+    );
+    changed.set(true);
+  }
+
+  /**
+   * Adds the size of a drawing, which has been stored for a game.
+   */
+  public void addBytes(String gameId, long bytes) {
+    entries.computeIfPresent(gameId, (_, entry) ->
+      new Entry(
+        gameId,
+        entry.state(),
+        entry.players(),
+        entry.round(),
+        System.currentTimeMillis(),
+        entry.bytes() + bytes
+      )
+    );
+    changed.set(true);
+  }
+
+  public void remove(String gameId) {
+    if (entries.remove(gameId) != null) {
+      changed.set(true);
+    }
+  }
+
+  private void rescan() {
+    long startMillis = System.currentTimeMillis();
+    Set<String> seen = ConcurrentHashMap.newKeySet();
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    try {
+      for (Path gameDirGroup : gameStore.listGameDirGroups()) {
+        tasks.add(
+          ForkJoinTask.adapt(() -> {
+            try {
+              scanGames(gameStore.listGameIds(gameDirGroup), seen);
+            } catch (IOException e) {
+              log.error("Error scanning games in {}", gameDirGroup, e);
+            }
+          })
+        );
+      }
+      List<String> archived = gameStore.listArchivedGameIds();
+      for (int i = 0; i < archived.size(); i += ARCHIVED_GAMES_PER_TASK) {
+        List<String> gameIds = archived.subList(
+          i,
+          Math.min(i + ARCHIVED_GAMES_PER_TASK, archived.size())
+        );
+        tasks.add(ForkJoinTask.adapt(() -> scanGames(gameIds, seen)));
+      }
+    } catch (IOException e) {
+      log.error("Error listing games for the catalog", e);
+      return;
+    }
+    ForkJoinTask.invokeAll(tasks);
+
+    // games which do not exist anymore (unless they have been changed during the scan)
+    entries
+      .entrySet()
+      .removeIf(
+        e ->
+          !seen.contains(e.getKey()) &&
+          e.getValue().lastModifiedMillis() < startMillis
+      );
+    changed.set(true);
+    writeSnapshotIfChanged();
+    log.info(
+      "Scanned {} games for the catalog in {} ms",
+      seen.size(),
+      System.currentTimeMillis() - startMillis
+    );
+  }
+
+  private void scanGames(List<String> gameIds, Set<String> seen) {
+    for (String gameId : gameIds) {
+      try {
+        Entry scanned = scanGame(gameId);
+        if (scanned != null) {
+          seen.add(gameId);
+          // changes which have been recorded in the meantime take precedence
+          entries.merge(gameId, scanned, (current, _) ->
+            current.lastModifiedMillis() > scanned.lastModifiedMillis()
+              ? current
+              : scanned
+          );
+        }
+      } catch (IOException | RuntimeException e) {
+        log.warn("Cannot scan game {} for the catalog", gameId, e);
+      }
+    }
+  }
+
+  private @Nullable Entry scanGame(String gameId) throws IOException {
+    GameStore.FileStats stats = gameStore.getFileStats(gameId);
+    if (stats == null) {
+      return null;
+    }
+    GameState gameState;
+    try {
+      gameState = JSONHelper.objectMapper.readValue(
+        gameStore.readFile(gameId, Game.STATE_FILENAME),
+        GameState.class
+      );
+    } catch (NoSuchFileException e) {
+      // created, but the state has never been written (e.g. crash): cataloged
+      // anyway, so that the retention sweeper removes it eventually
+      return new Entry(
+        gameId,
+        GameState.State.WaitingForPlayers,
+        0,
+        0,
+        stats.lastModifiedMillis(),
+        stats.bytes()
+      );
+    }
+    if (!gameStore.isArchived(gameId)) {
+      GameJournal.replay(
+        gameState,
+        GameJournal.parse(GameJournal.readBytes(gameStore.getGameDir(gameId)))
+      );
+    }
+    return new Entry(
+      gameId,
+      gameState.state,
+      gameState.players.size(),
+      gameState.round,
+      stats.lastModifiedMillis(),
+      stats.bytes()
+    );
+  }
+
+  private void loadSnapshot() {
+    try (
+      DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(snapshotFile))
+      )
+    ) {
+      if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+        log.warn(
+          "Ignoring catalog snapshot {} of unknown format",
+          snapshotFile
+        );
+        return;
+      }
+      int count = in.readInt();
+      GameState.State[] states = GameState.State.values();
+      byte[] gameId = new byte[GameManager.GAME_ID_LENGTH];
+      for (int i = 0; i < count; i++) {
+        in.readFully(gameId);
+        Entry entry = new Entry(
+          new String(gameId, StandardCharsets.US_ASCII),
+          states[in.readByte()],
+          in.readUnsignedShort(),
+          in.readUnsignedShort(),
+          in.readLong(),
+          in.readLong()
+        );
+        entries.put(entry.gameId(), entry);
+      }
+      log.info("Loaded catalog of {} games", count);
+    } catch (NoSuchFileException e) {
+      log.info("No catalog snapshot yet: waiting for the scan of all games");
+    } catch (IOException | RuntimeException e) {
+      log.warn("Cannot load catalog snapshot {}", snapshotFile, e);
+      entries.clear();
+    }
+  }
+
+  private synchronized void writeSnapshotIfChanged() {
+    if (!changed.getAndSet(false)) {
+      return;
+    }
+    List<Entry> snapshot = List.copyOf(entries.values());
+    // atomic, so that a partially written snapshot never gets loaded
+    Path tmpFile = snapshotFile.resolveSibling(
+      snapshotFile.getFileName() + ".tmp"
+    );
+    try {
+      try (
+        DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmpFile))
+        )
+      ) {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(snapshot.size());
+        for (Entry entry : snapshot) {
+          out.write(entry.gameId().getBytes(StandardCharsets.US_ASCII));
+          out.writeByte(entry.state().ordinal());
+          out.writeShort(entry.players());
+          out.writeShort(entry.round());
+          out.writeLong(entry.lastModifiedMillis());
+          out.writeLong(entry.bytes());
+        }
+      }
+      Files.move(tmpFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.error("Error writing catalog snapshot {}", snapshotFile, e);
+      changed.set(true);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package net.czedik.hermann.tdt;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A change of the {@link GameState}, as recorded in the journal of a game.
+ * <p>
+ * These get stored/read from disk, so be careful with changes: they need to be
+ * backwards compatible.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes(
+  {
+    @JsonSubTypes.Type(value = GameEvent.PlayerJoined.class, name = "join"),
+    @JsonSubTypes.Type(value = GameEvent.PlayerLeft.class, name = "leave"),
+    @JsonSubTypes.Type(value = GameEvent.GameStarted.class, name = "start"),
+    @JsonSubTypes.Type(value = GameEvent.TextTyped.class, name = "type"),
+    @JsonSubTypes.Type(value = GameEvent.ImageDrawn.class, name = "draw"),
+    @JsonSubTypes.Type(value = GameEvent.RoundAdvanced.class, name = "round"),
+  }
+)
+public sealed interface GameEvent {
+  void applyTo(GameState gameState);
+
+  record PlayerJoined(Player player) implements GameEvent {
+    public PlayerJoined {
+      Objects.requireNonNull(player);
+    }
+
+    @Override
+    public void applyTo(GameState gameState) {
+      gameState.players.add(player);
+    }
+  }
+
+  record PlayerLeft(String playerId) implements GameEvent {
+    public PlayerLeft {
+      Objects.requireNonNull(playerId);
+    }
+
+    @Override
+    public void applyTo(GameState gameState) {
+      gameState.players.removeIf(p -> p.id().equals(playerId));
+    }
+  }
+
+  record GameStarted(int[][] gameMatrix) implements GameEvent {
+    public GameStarted {
+      Objects.requireNonNull(gameMatrix);
+    }
+
+    @Override
+    public void applyTo(GameState gameState) {
+      int numberOfPlayers = gameState.players.size();
+      gameState.state = GameState.State.Started;
+      gameState.gameMatrix = gameMatrix;
+      Story[] stories = new Story[numberOfPlayers];
+      Arrays.setAll(stories, i -> new Story(numberOfPlayers));
+      gameState.stories = stories;
+    }
+  }
+
+  record TextTyped(
+    int storyIndex,
+    int round,
+    String text
+  ) implements GameEvent {
+    public TextTyped {
+      Objects.requireNonNull(text);
+    }
+
+    @Override
+    public void applyTo(GameState gameState) {
+      Objects.requireNonNull(gameState.stories)[storyIndex].elements[round] =
+        StoryElement.createTextElement(text);
+    }
+  }
+
+  record ImageDrawn(
+    int storyIndex,
+    int round,
+    String imageFilename
+  ) implements GameEvent {
+    public ImageDrawn {
+      Objects.requireNonNull(imageFilename);
+    }
+
+    @Override
+    public void applyTo(GameState gameState) {
+      Objects.requireNonNull(gameState.stories)[storyIndex].elements[round] =
+        StoryElement.createImageElement(imageFilename);
+    }
+  }
+
+  record RoundAdvanced(int round, GameState.State state) implements GameEvent {
+    public RoundAdvanced {
+      Objects.requireNonNull(state);
+    }
+
+    @Override
+    public void applyTo(GameState gameState) {
+      gameState.round = round;
+      gameState.state = state;
+    }
+  }
+}
@@ -0,0 +1,234 @@
+package net.czedik.hermann.tdt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.BitSet;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allocates new game ids without locks and without probing the file system.
+ * <p>
+ * The id space (32 characters, 5 positions: 32^5 ids) fits completely into a
+ * bitmap of 4 MB, with one bit per id, which is memory-mapped from a file. Ids
+ * are reserved by setting their bit with a CAS, and the operating system
+ * writes the changed pages back to the file, so reservations are persisted
+ * cheaply. The game directories remain the durable record of the used ids: if
+ * the bitmap is missing (or reservations got lost in a crash), the bitmap is
+ * rebuilt from them (or the caller detects the existing directory and
+ * reserves another id).
+ * <p>
+ * Ids are drawn randomly, so they cannot be guessed. When the bitmap fills up,
+ * random draws fail more and more often: after a few failed draws, free ids
+ * are searched starting at a random position instead.
+ */
+public class GameIdAllocator implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(
+    GameIdAllocator.class
+  );
+
+  private static final int BITS_PER_CHARACTER = 5;
+
+  private static final int CAPACITY =
+    1 << (BITS_PER_CHARACTER * GameManager.GAME_ID_LENGTH);
+
+  private static final int WORDS = CAPACITY / Long.SIZE;
+
+  private static final int BYTES = CAPACITY / Byte.SIZE;
+
+  private static final int RANDOM_ATTEMPTS = 16;
+
+  // atomic access to the words of the mapped bitmap
+  private static final VarHandle WORD = MethodHandles.byteBufferViewVarHandle(
+    long[].class,
+    ByteOrder.LITTLE_ENDIAN
+  );
+
+  /**
+   * All ids which are in use (in any storage tier).
+   */
+  @FunctionalInterface
+  public interface ExistingGameIds {
+    void forEach(Consumer<String> action) throws IOException;
+  }
+
+  private final SecureRandom random = new SecureRandom();
+
+  private final MappedByteBuffer bitmap;
+
+  /**
+   * @param bitmapFile  file of the bitmap (which gets created, if it does not
+   *                    exist)
+   * @param existingIds for rebuilding the bitmap
+   */
+  public GameIdAllocator(Path bitmapFile, ExistingGameIds existingIds)
+    throws IOException {
+    if (!Files.exists(bitmapFile) || Files.size(bitmapFile) != BYTES) {
+      rebuild(bitmapFile, existingIds);
+    }
+    try (
+      FileChannel channel = FileChannel.open(
+        bitmapFile,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+      )
+    ) {
+      bitmap = channel.map(FileChannel.MapMode.READ_WRITE, 0, BYTES);
+    }
+  }
+
+  private static void rebuild(Path bitmapFile, ExistingGameIds existingIds)
+    throws IOException {
+    BitSet reserved = new BitSet(CAPACITY);
+    existingIds.forEach(gameId -> reserved.set(toIndex(gameId)));
+    ByteBuffer content = ByteBuffer.allocate(BYTES).order(
+      ByteOrder.LITTLE_ENDIAN
+    );
+    content.asLongBuffer().put(reserved.toLongArray());
+    // atomic, so that a partially written bitmap never gets used
+    Path tmpFile = bitmapFile.resolveSibling(bitmapFile.getFileName() + ".tmp");
+    try (
+      FileChannel channel = FileChannel.open(
+        tmpFile,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE
+      )
+    ) {
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+      channel.force(false);
+    }
+    Files.move(tmpFile, bitmapFile, StandardCopyOption.ATOMIC_MOVE);
+    log.info(
+      "Rebuilt game id bitmap {} ({} ids in use)",
+      bitmapFile,
+      reserved.cardinality()
+    );
+  }
+
+  /**
+   * Reserves a new, random id.
+   *
+   * @throws IllegalStateException if all ids are in use
+   */
+  public String reserve() {
+    for (int attempt = 0; attempt < RANDOM_ATTEMPTS; attempt++) {
+      int index = random.nextInt(CAPACITY);
+      if (trySet(index)) {
+        return toGameId(index);
+      }
+    }
+    // crowded: take the first free id after a random position
+    int start = random.nextInt(WORDS);
+    for (int i = 0; i < WORDS; i++) {
+      int word = (start + i) % WORDS;
+      long bits = (long) WORD.getVolatile(bitmap, word * Long.BYTES);
+      while (bits != -1L) {
+        int bit = Long.numberOfTrailingZeros(~bits);
+        if (
+          WORD.compareAndSet(
+            bitmap,
+            word * Long.BYTES,
+            bits,
+            bits | (1L << bit)
+          )
+        ) {
+          return toGameId(word * Long.SIZE + bit);
+        }
+        bits = (long) WORD.getVolatile(bitmap, word * Long.BYTES);
+      }
+    }
+    throw new IllegalStateException("All game ids are in use");
+  }
+
+  public boolean isReserved(String gameId) {
+    int index = toIndex(gameId);
+    long bits = (long) WORD.getVolatile(bitmap, byteOffset(index));
+    return (bits & bitMask(index)) != 0;
+  }
+
+  /**
+   * Makes an id available again (after its game has been deleted).
+   */
+  public void release(String gameId) {
+    int index = toIndex(gameId);
+    long mask = bitMask(index);
+    while (true) {
+      long bits = (long) WORD.getVolatile(bitmap, byteOffset(index));
+      if (
+        (bits & mask) == 0 ||
+        WORD.compareAndSet(bitmap, byteOffset(index), bits, bits & ~mask)
+      ) {
+        return;
+      }
+    }
+  }
+
+  private boolean trySet(int index) {
+    long mask = bitMask(index);
+    while (true) {
+      long bits = (long) WORD.getVolatile(bitmap, byteOffset(index));
+      if ((bits & mask) != 0) {
+        return false;
+      }
+      if (WORD.compareAndSet(bitmap, byteOffset(index), bits, bits | mask)) {
+        return true;
+      }
+    }
+  }
+
+  private static int byteOffset(int index) {
+    return (index / Long.SIZE) * Long.BYTES;
+  }
+
+  private static long bitMask(int index) {
+    return 1L << (index % Long.SIZE);
+  }
+
+  // package-private for tests
+  static int toIndex(String gameId) {
+    GameManager.validateGameId(gameId);
+    int index = 0;
+    for (int i = 0; i < gameId.length(); i++) {
+      index =
+        (index << BITS_PER_CHARACTER) |
+        GameManager.CHARACTERS_WITHOUT_AMBIGUOUS.indexOf(gameId.charAt(i));
+    }
+    return index;
+  }
+
+  // package-private for tests
+  static String toGameId(int index) {
+    char[] gameId = new char[GameManager.GAME_ID_LENGTH];
+    for (int i = gameId.length - 1; i >= 0; i--) {
+      gameId[i] = GameManager.CHARACTERS_WITHOUT_AMBIGUOUS.charAt(
+        index & ((1 << BITS_PER_CHARACTER) - 1)
+      );
+      index >>>= BITS_PER_CHARACTER;
+    }
+    return new String(gameId);
+  }
+
+  /**
+   * Writes the changed pages of the bitmap to the file.
+   */
+  @Override
+  public void close() {
+    bitmap.force();
+  }
+}
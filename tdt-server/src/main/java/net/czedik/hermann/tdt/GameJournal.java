@@ -0,0 +1,124 @@
+package net.czedik.hermann.tdt;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tools.jackson.core.JacksonException;
+
+/**
+ * Append-only journal of the {@link GameEvent}s of a game, stored as one JSON
+ * document per line next to the state file (which acts as snapshot).
+ * <p>
+ * Every entry has a sequence number. The snapshot remembers the sequence number
+ * of the last event it contains ({@link GameState#journalSeq}), so replaying
+ * skips all entries which are already part of the snapshot.
+ */
+public class GameJournal {
+
+  private static final Logger log = LoggerFactory.getLogger(GameJournal.class);
+
+  public static final String JOURNAL_FILENAME = "journal.jsonl";
+
+  public record Entry(long seq, GameEvent event) {
+    public Entry {
+      Objects.requireNonNull(event);
+    }
+  }
+
+  private GameJournal() {
+    // hide constructor
+  }
+
+  public static byte[] serialize(Collection<Entry> entries) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (Entry entry : entries) {
+      out.writeBytes(JSONHelper.objectMapper.writeValueAsBytes(entry));
+      out.write('\n');
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Reads the journal file of the given game directory (to be parsed with
+   * {@link #parse(byte[])}).
+   *
+   * @return the content of the journal, or no bytes if there is no journal
+   */
+  public static byte[] readBytes(Path gameDir) throws IOException {
+    try {
+      return Files.readAllBytes(gameDir.resolve(JOURNAL_FILENAME));
+    } catch (NoSuchFileException e) {
+      return new byte[0];
+    }
+  }
+
+  /**
+   * Parses journal entries. A torn last line (e.g. because of a crash while
+   * appending) is ignored: it gets truncated before the next entries are
+   * appended (see {@link GameStateWriter}).
+   */
+  public static List<Entry> parse(byte[] serializedEntries)
+    throws IOException {
+    return parse(new ByteArrayInputStream(serializedEntries));
+  }
+
+  private static List<Entry> parse(InputStream in) throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(
+      new InputStreamReader(in, StandardCharsets.UTF_8)
+    );
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      try {
+        entries.add(JSONHelper.objectMapper.readValue(line, Entry.class));
+      } catch (JacksonException e) {
+        log.warn("Ignoring unreadable journal entry: {}", line, e);
+        break;
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Applies all entries which are newer than the given state.
+   *
+   * @return number of applied entries
+   */
+  public static int replay(GameState gameState, List<Entry> entries) {
+    int applied = 0;
+    for (Entry entry : entries) {
+      if (entry.seq() <= gameState.journalSeq) {
+        // already contained in the snapshot (or a duplicate)
+        continue;
+      }
+      if (entry.seq() != gameState.journalSeq + 1) {
+        log.error(
+          "Gap in journal: expected entry {}, but got {}",
+          gameState.journalSeq + 1,
+          entry.seq()
+        );
+        break;
+      }
+      entry.event().applyTo(gameState);
+      gameState.journalSeq = entry.seq();
+      applied++;
+    }
+    return applied;
+  }
+}
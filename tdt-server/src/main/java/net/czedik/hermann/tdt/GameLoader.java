@@ -1,12 +1,10 @@
 package net.czedik.hermann.tdt;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -22,36 +20,163 @@ public class GameLoader {
 
   private final Path gameDir;
 
-  private @Nullable Game loadedGame;
+  private final GameStore gameStore;
 
+  private final GameStateWriter stateWriter;
+
+  private final GameCatalog catalog;
+
+  private final GameMetrics metrics;
+
+  // actions for this game get processed one after the other
+  private final SerialExecutor mailbox;
+
+  // written with the lock held; volatile, so that it can be checked without
+  // the lock (e.g. by the metrics)
+  private volatile @Nullable Game loadedGame;
+
+  // number of open references, or RETIRED
   private final AtomicLong gameRefCount = new AtomicLong(0);
 
-  public GameLoader(String gameId, Path gameDir) {
+  private static final long RETIRED = -1;
+
+  // time when the last reference was closed
+  private volatile long lastUsedNanos = System.nanoTime();
+
+  public GameLoader(
+    String gameId,
+    Path gameDir,
+    GameStore gameStore,
+    GameStateWriter stateWriter,
+    GameCatalog catalog,
+    Executor actionExecutor,
+    GameMetrics metrics
+  ) {
     this.gameId = Objects.requireNonNull(gameId);
     this.gameDir = Objects.requireNonNull(gameDir);
+    this.gameStore = Objects.requireNonNull(gameStore);
+    this.stateWriter = Objects.requireNonNull(stateWriter);
+    this.catalog = Objects.requireNonNull(catalog);
+    this.metrics = Objects.requireNonNull(metrics);
+    this.mailbox = new SerialExecutor(actionExecutor);
+  }
+
+  /**
+   * Queues an action in the mailbox of this game. Actions are processed in
+   * order, one at a time.
+   */
+  public void execute(Runnable action) {
+    mailbox.execute(action);
   }
 
-  public GameRef getGameRef() {
+  /**
+   * @return a new reference to the game, or null if this loader has already
+   * been retired (in that case a new loader needs to be used)
+   */
+  public @Nullable GameRef tryGetGameRef() {
+    long count;
+    do {
+      count = gameRefCount.get();
+      if (count == RETIRED) {
+        return null;
+      }
+    } while (!gameRefCount.compareAndSet(count, count + 1));
     return new GameRef();
   }
 
-  // note: this method is only safe, if the caller synchronizes with the same lock on both getGameRef() and isUnused() calls
+  /**
+   * Retires this loader, if there are no references to the game. A retired
+   * loader does not hand out any new references, so it can be safely
+   * discarded.
+   *
+   * @return whether the loader has been retired
+   */
+  public boolean retireIfUnused() {
+    if (!gameRefCount.compareAndSet(0, RETIRED)) {
+      return false;
+    }
+    synchronized (this) {
+      // unload the game (its changes have already been submitted when the last reference was closed)
+      loadedGame = null;
+    }
+    return true;
+  }
+
+  /**
+   * @return whether there are no open references to the game
+   */
   public boolean isUnused() {
     return gameRefCount.get() == 0;
   }
 
+  /**
+   * @return whether the game is in memory
+   */
+  public boolean isGameLoaded() {
+    return loadedGame != null;
+  }
+
+  /**
+   * @return the game, if it is in memory. Note: without the lock, only the
+   * parts of the game which are safe for concurrent reads may be used (e.g.
+   * {@link Game#hasImage(String)}).
+   */
+  public @Nullable Game getLoadedGame() {
+    return loadedGame;
+  }
+
+  /**
+   * @return {@link System#nanoTime()} when the game has been used the last
+   * time
+   */
+  public long getLastUsedNanos() {
+    return lastUsedNanos;
+  }
+
   private @Nullable Game loadGame() {
     log.info("Loading game {}", gameId);
 
-    Path gameStateFile = gameDir.resolve(Game.STATE_FILENAME);
+    // states which have not been written yet take precedence over the files
+    GameStateWriter.PendingWrite pendingWrite = stateWriter.getPendingWrite(
+      gameDir
+    );
+
+    long startNanos = System.nanoTime();
+    try {
+      byte[] snapshot = pendingWrite.snapshot();
+      if (snapshot == null) {
+        snapshot = gameStore.readFile(gameId, Game.STATE_FILENAME);
+      }
+      GameState gameState = JSONHelper.objectMapper.readValue(
+        snapshot,
+        GameState.class
+      );
+      long bytes = snapshot.length;
+
+      byte[] journal = GameJournal.readBytes(gameDir);
+      bytes += journal.length;
+      int replayed = GameJournal.replay(gameState, GameJournal.parse(journal));
+      for (byte[] pendingJournalEntries : pendingWrite.journalEntries()) {
+        replayed += GameJournal.replay(
+          gameState,
+          GameJournal.parse(pendingJournalEntries)
+        );
+      }
+      if (replayed > 0) {
+        log.info("Game {}: Replayed {} journal entries", gameId, replayed);
+      }
+      metrics.recordLoad(System.nanoTime() - startNanos, bytes);
 
-    GameState gameState;
-    try (
-      InputStream in = new BufferedInputStream(
-        Files.newInputStream(gameStateFile)
-      )
-    ) {
-      gameState = JSONHelper.objectMapper.readValue(in, GameState.class);
+      Game game = new Game(gameId, gameDir, gameState, replayed);
+      if (
+        gameState.state == GameState.State.Finished &&
+        pendingWrite.stories() == null &&
+        !gameStore.exists(gameId, Game.STORIES_FILENAME)
+      ) {
+        // finished before the stories were stored
+        game.requestStoriesSnapshot();
+      }
+      return game;
     } catch (NoSuchFileException e) {
       log.info("Cannot load unknown game {} (no state file)", gameId);
       return null;
@@ -59,21 +184,47 @@ public class GameLoader {
       log.error("Error loading game {}", gameId, e);
       return null;
     }
-    return new Game(gameId, gameDir, gameState);
+  }
+
+  /**
+   * Called by the {@link GameStateWriter} to serialize the changes of a game.
+   */
+  synchronized void submitStateIfChanged() {
+    if (loadedGame != null) {
+      submitStateIfChanged(loadedGame, false);
+    }
+  }
+
+  // note: the caller must hold the lock
+  private void submitStateIfChanged(Game game, boolean compact) {
+    Game.StateUpdate stateUpdate = game.takeStateUpdate(compact);
+    if (stateUpdate != null) {
+      stateWriter.submit(gameDir, stateUpdate);
+      catalog.update(game, stateUpdate.size());
+    }
   }
 
   public class GameRef {
 
     private boolean closed = false;
 
-    public GameRef() {
-      gameRefCount.getAndIncrement();
-    }
+    // note: the reference count has already been incremented by tryGetGameRef()
+    private GameRef() {}
 
     public String getGameId() {
       return gameId;
     }
 
+    public GameLoader getGameLoader() {
+      return GameLoader.this;
+    }
+
+    public boolean isClosed() {
+      synchronized (GameLoader.this) {
+        return closed;
+      }
+    }
+
     public void setNewGame(Game newGame) {
       synchronized (GameLoader.this) {
         checkNotClosed();
@@ -83,6 +234,7 @@ public class GameLoader {
           );
         }
         loadedGame = Objects.requireNonNull(newGame);
+        markDirtyIfChanged();
       }
     }
 
@@ -94,14 +246,31 @@ public class GameLoader {
     }
 
     public <R> R useGame(Function<Game, R> handler) {
+      long waitStartNanos = System.nanoTime();
       synchronized (GameLoader.this) {
-        checkNotClosed();
+        long holdStartNanos = System.nanoTime();
+        metrics.recordLockWait(holdStartNanos - waitStartNanos);
+        try {
+          checkNotClosed();
 
-        if (loadedGame == null) {
-          loadedGame = loadGame();
+          if (loadedGame == null) {
+            loadedGame = loadGame();
+          }
+
+          try {
+            return handler.apply(loadedGame);
+          } finally {
+            markDirtyIfChanged();
+          }
+        } finally {
+          metrics.recordLockHold(System.nanoTime() - holdStartNanos);
         }
+      }
+    }
 
-        return handler.apply(loadedGame);
+    private void markDirtyIfChanged() {
+      if (loadedGame != null && loadedGame.isStateChanged()) {
+        stateWriter.markDirty(GameLoader.this);
       }
     }
 
@@ -119,17 +288,18 @@ public class GameLoader {
         checkNotClosed();
         closed = true;
 
-        // last ref closed -> unload game
-        // note: it can happen that concurrently a new ref gets created, then the game will be loaded again
+        // last ref closed -> persist the game
+        // note: the game stays in memory until the loader gets retired, so that
+        // it does not need to be loaded again if it gets used again soon
         if (gameRefCount.get() == 1) {
           if (loadedGame != null) {
-            loadedGame.storeState();
-            loadedGame = null;
+            submitStateIfChanged(loadedGame, true);
           }
+          lastUsedNanos = System.nanoTime();
         }
 
-        // important: only after storing the state we decrement the count,
-        // so that afterwards the GameLoader can be safely destroyed (if no new ref was created in the meantime)
+        // important: only after submitting the state we decrement the count,
+        // so that afterwards the GameLoader can be safely retired (if no new ref was created in the meantime)
         gameRefCount.decrementAndGet();
       }
     }
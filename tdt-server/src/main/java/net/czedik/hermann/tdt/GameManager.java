@@ -1,19 +1,34 @@
 package net.czedik.hermann.tdt;
 
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import net.czedik.hermann.tdt.GameLoader.GameRef;
 import net.czedik.hermann.tdt.actions.AccessAction;
 import net.czedik.hermann.tdt.actions.JoinAction;
+import net.czedik.hermann.tdt.actions.SpectateAction;
 import net.czedik.hermann.tdt.actions.TypeAction;
 import net.czedik.hermann.tdt.playerstate.UnknownGameState;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,25 +40,176 @@ public class GameManager {
 
   private static final Logger log = LoggerFactory.getLogger(GameManager.class);
 
-  private static final String CHARACTERS_WITHOUT_AMBIGUOUS =
+  static final String CHARACTERS_WITHOUT_AMBIGUOUS =
     "23456789abcdefghijkmnpqrstuvwxyz";
-  private static final int GAME_ID_LENGTH = 5;
+  static final int GAME_ID_LENGTH = 5;
   private static final Pattern gameIdPattern = Pattern.compile(
     "[" + CHARACTERS_WITHOUT_AMBIGUOUS + "]{" + GAME_ID_LENGTH + "}"
   );
 
-  // guarded by this
-  private final Map<String, GameLoader> gameLoaders = new HashMap<>();
+  private final Map<String, GameLoader> gameLoaders =
+    new ConcurrentHashMap<>();
 
-  // guarded by this
-  private final Map<Client, GameRef> clientToGameRef = new HashMap<>();
+  // games whose stored files are being changed (see runIfUnused()): no loader
+  // can be created for them until the future completes
+  private final Map<String, CompletableFuture<Void>> storageOperations =
+    new ConcurrentHashMap<>();
 
-  private final Path gamesPath;
+  private final Map<Client, GameRef> clientToGameRef =
+    new ConcurrentHashMap<>();
 
-  public GameManager(@Value("${storage.dir}") String storageDir) {
+  private final GameStore gameStore;
+
+  private final GameCatalog catalog;
+
+  // temporary files of drawings which are being uploaded
+  private final Path uploadsPath;
+
+  private final GameStateWriter stateWriter;
+
+  private final DrawingWriter drawingWriter;
+
+  private final ThumbnailGenerator thumbnailGenerator;
+
+  private final GameMetrics metrics;
+
+  // executes the mailboxes of the games (null: actions run on the calling threads)
+  private final @Nullable ExecutorService actorExecutor;
+
+  // unused games stay in memory for this long (0: unload right away)
+  private final long residentGameTtlNanos;
+
+  private final int maxResidentGames;
+
+  private final @Nullable ScheduledExecutorService residentGameEvictor;
+
+  // moves finished games into segments, once they have been unloaded (null: disabled)
+  private final @Nullable ScheduledExecutorService gameArchiver;
+
+  private final long archiveDelayMillis;
+
+  public GameManager(
+    @Value("${storage.dir}") String storageDir,
+    @Value("${storage.flush-interval-millis:1000}") long flushIntervalMillis,
+    @Value("${storage.drawing-writer.threads:2}") int drawingWriterThreads,
+    @Value(
+      "${storage.drawing-writer.queue-capacity:64}"
+    ) int drawingWriterQueueCapacity,
+    @Value("${game.actors.enabled:true}") boolean actorsEnabled,
+    @Value("${game.resident.ttl-millis:300000}") long residentGameTtlMillis,
+    @Value("${game.resident.max-games:1000}") int maxResidentGames,
+    @Value("${storage.archive.enabled:true}") boolean archiveEnabled,
+    @Value("${storage.archive.delay-millis:600000}") long archiveDelayMillis,
+    GameStore gameStore,
+    GameCatalog catalog,
+    ImageCache imageCache,
+    ThumbnailGenerator thumbnailGenerator,
+    GameMetrics metrics
+  ) {
     Path storageDirPath = Path.of(storageDir).toAbsolutePath().normalize();
     log.info("Using storage path: {}", storageDirPath);
-    gamesPath = storageDirPath.resolve("games");
+    this.gameStore = gameStore;
+    this.catalog = catalog;
+    uploadsPath = storageDirPath.resolve("uploads");
+    deleteLeftoverUploads();
+    stateWriter = new GameStateWriter(flushIntervalMillis, metrics);
+    drawingWriter = new DrawingWriter(
+      drawingWriterThreads,
+      drawingWriterQueueCapacity,
+      gameStore.getImageStore(),
+      imageCache
+    );
+    this.thumbnailGenerator = thumbnailGenerator;
+    this.metrics = metrics;
+    actorExecutor = actorsEnabled
+      ? Executors.newThreadPerTaskExecutor(
+          Thread.ofVirtual().name("game-actor-", 0).factory()
+        )
+      : null;
+    residentGameTtlNanos = TimeUnit.MILLISECONDS.toNanos(residentGameTtlMillis);
+    this.maxResidentGames = maxResidentGames;
+    if (residentGameTtlMillis > 0) {
+      residentGameEvictor = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("resident-game-evictor").daemon().factory()
+      );
+      long sweepIntervalMillis = Math.clamp(
+        residentGameTtlMillis / 4,
+        1000,
+        60_000
+      );
+      var _ = residentGameEvictor.scheduleWithFixedDelay(
+        this::evictUnusedGames,
+        sweepIntervalMillis,
+        sweepIntervalMillis,
+        TimeUnit.MILLISECONDS
+      );
+    } else {
+      residentGameEvictor = null;
+    }
+    gameArchiver = archiveEnabled
+      ? Executors.newSingleThreadScheduledExecutor(
+          Thread.ofPlatform().name("game-archiver").daemon().factory()
+        )
+      : null;
+    this.archiveDelayMillis = archiveDelayMillis;
+
+    metrics.registerGauge(
+      "tdt.game.loaders",
+      "Number of game loaders (games in use or in memory)",
+      gameLoaders::size
+    );
+    metrics.registerGauge(
+      "tdt.games.loaded",
+      "Number of games in memory",
+      () ->
+        gameLoaders.values().stream().filter(GameLoader::isGameLoaded).count()
+    );
+    metrics.registerImageCache(imageCache);
+
+    // the catalog knows which games are finished only after its scan
+    var _ = catalog.getScan().thenRun(this::storeMissingStories);
+  }
+
+  // uploads which have not been committed before the last shutdown
+  private void deleteLeftoverUploads() {
+    try {
+      Files.createDirectories(uploadsPath);
+      try (
+        DirectoryStream<Path> uploads = Files.newDirectoryStream(uploadsPath)
+      ) {
+        for (Path upload : uploads) {
+          Files.deleteIfExists(upload);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+        "Cannot prepare uploads directory " + uploadsPath,
+        e
+      );
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    log.info("Flushing drawings and game states");
+    if (residentGameEvictor != null) {
+      residentGameEvictor.shutdownNow();
+    }
+    if (gameArchiver != null) {
+      gameArchiver.shutdownNow();
+    }
+    drawingWriter.shutdown();
+    if (actorExecutor != null) {
+      actorExecutor.shutdown();
+      try {
+        if (!actorExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+          log.warn("Timeout while waiting for game actions to finish");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    stateWriter.shutdown();
   }
 
   public String newGame(CreateGameRequest createGameRequest)
@@ -71,14 +237,31 @@ public class GameManager {
   public void handleAccessAction(Client client, AccessAction accessAction) {
     handleAccessOrJoinAction(
       client,
+      "access",
       game -> game.access(client, accessAction),
       accessAction.gameId()
     );
   }
 
+  public void handleSpectateAction(
+    Client client,
+    SpectateAction spectateAction
+  ) {
+    handleAccessOrJoinAction(
+      client,
+      "spectate",
+      game -> {
+        game.spectate(client);
+        return true;
+      },
+      spectateAction.gameId()
+    );
+  }
+
   public void handleJoinAction(Client client, JoinAction joinAction) {
     handleAccessOrJoinAction(
       client,
+      "join",
       game -> game.join(client, joinAction),
       joinAction.gameId()
     );
@@ -86,6 +269,7 @@ public class GameManager {
 
   private void handleAccessOrJoinAction(
     Client client,
+    String action,
     Function<Game, Boolean> actionHandler,
     String gameId
   ) {
@@ -97,29 +281,68 @@ public class GameManager {
     }
 
     GameRef gameRef = getGameRef(gameId);
-    boolean added = false;
-    try {
-      added = gameRef.useGame(game -> {
-        if (game == null) {
-          handleGameUnknown(client);
-          return false;
+    // associate right away, so that further actions of the client get queued
+    // in the mailbox of this game (behind this one)
+    associateClientWithGameRef(client, gameRef);
+    executeInGame(gameRef, action, () -> {
+      boolean added = false;
+      try {
+        added = gameRef.useGame(game -> {
+          if (game == null) {
+            handleGameUnknown(client);
+            return false;
+          }
+          return actionHandler.apply(game);
+        });
+      } finally {
+        if (!added) {
+          clientToGameRef.remove(client, gameRef);
+          closeGameRef(gameRef);
         }
-        return actionHandler.apply(game);
-      });
-    } finally {
-      if (added) {
-        associateClientWithGameRef(client, gameRef);
-      } else {
-        closeGameRef(gameRef);
       }
-    }
+    });
+  }
+
+  /**
+   * Queues an action in the mailbox of the game. Actions for references which
+   * have been closed in the meantime are skipped.
+   *
+   * @param action name of the action (for the metrics)
+   */
+  private void executeInGame(
+    GameRef gameRef,
+    String action,
+    Runnable handler
+  ) {
+    long receivedNanos = System.nanoTime();
+    gameRef
+      .getGameLoader()
+      .execute(() -> {
+        if (gameRef.isClosed()) {
+          log.info(
+            "Skipping action for closed reference to game {}",
+            gameRef.getGameId()
+          );
+          return;
+        }
+        try {
+          handler.run();
+        } finally {
+          metrics.recordAction(action, System.nanoTime() - receivedNanos);
+        }
+      });
+  }
+
+  private void executeInGame(
+    GameRef gameRef,
+    String action,
+    Consumer<Game> handler
+  ) {
+    executeInGame(gameRef, action, () -> gameRef.useGame(handler));
   }
 
   private void associateClientWithGameRef(Client client, GameRef gameRef) {
-    GameRef previousGameRefForClient;
-    synchronized (this) {
-      previousGameRefForClient = clientToGameRef.put(client, gameRef);
-    }
+    GameRef previousGameRefForClient = clientToGameRef.put(client, gameRef);
     if (previousGameRefForClient != null) {
       log.warn(
         "Client {} unexpectedly switched between games. New game: {} - Old game: {}",
@@ -132,39 +355,172 @@ public class GameManager {
   }
 
   private GameRef getGameRef(String gameId) {
-    GameRef gameRef;
-    synchronized (this) {
+    while (true) {
+      // note: no loader gets created (null) while a storage operation runs
       GameLoader gameLoader = gameLoaders.computeIfAbsent(gameId, id ->
-        new GameLoader(gameId, getGameDir(gameId))
+        storageOperations.containsKey(id)
+          ? null
+          : new GameLoader(
+              gameId,
+              getGameDir(gameId),
+              gameStore,
+              stateWriter,
+              catalog,
+              actorExecutor != null ? actorExecutor : Runnable::run,
+              metrics
+            )
       );
+      if (gameLoader == null) {
+        CompletableFuture<Void> storageOperation = storageOperations.get(
+          gameId
+        );
+        if (storageOperation != null) {
+          storageOperation.join();
+        }
+        continue;
+      }
+      GameRef gameRef = gameLoader.tryGetGameRef();
+      if (gameRef != null) {
+        log.info(
+          "Access to game loader of game {} (total number of game loaders: {})",
+          gameId,
+          gameLoaders.size()
+        );
+        return gameRef;
+      }
+      // the loader has been retired concurrently: make sure it is gone, and retry with a new one
+      gameLoaders.remove(gameId, gameLoader);
+    }
+  }
+
+  private void closeGameRef(GameRef gameRef) {
+    gameRef.close();
+    GameLoader gameLoader = gameRef.getGameLoader();
+    // loaded games stay in memory for a while (see evictUnusedGames())
+    if (residentGameEvictor == null || !gameLoader.isGameLoaded()) {
+      removeGameLoaderIfUnused(gameLoader);
+    }
+  }
+
+  private boolean removeGameLoaderIfUnused(GameLoader gameLoader) {
+    if (gameLoader.retireIfUnused()) {
+      gameLoaders.remove(gameLoader.gameId, gameLoader);
       log.info(
-        "Access to game loader of game {} (total number of game loaders: {})",
-        gameId,
+        "Removed unused game loader for game {} (total number of loaders: {})",
+        gameLoader.gameId,
         gameLoaders.size()
       );
-      gameRef = gameLoader.getGameRef();
+      scheduleArchiving(gameLoader.gameId);
+      return true;
     }
-    return gameRef;
+    return false;
   }
 
-  private void closeGameRef(GameRef gameRef) {
-    gameRef.close();
-    removeGameLoaderIfUnused(gameRef.getGameId());
+  private void scheduleArchiving(String gameId) {
+    if (gameArchiver == null) {
+      return;
+    }
+    try {
+      var _ = gameArchiver.schedule(
+        () -> archiveIfUnused(gameId),
+        archiveDelayMillis,
+        TimeUnit.MILLISECONDS
+      );
+    } catch (RejectedExecutionException e) {
+      // shutting down: the game gets archived when it is unloaded the next time
+    }
   }
 
-  private void removeGameLoaderIfUnused(String gameId) {
-    synchronized (this) {
-      GameLoader gameLoader = gameLoaders.get(gameId);
-      if (gameLoader != null) {
-        if (gameLoader.isUnused()) {
-          gameLoaders.remove(gameId);
-          log.info(
-            "Removed unused game loader for game {} (total number of loaders: {})",
-            gameLoader.gameId,
-            gameLoaders.size()
-          );
+  /**
+   * Moves a finished game into a segment of the {@link GameStore}. Games
+   * which are not finished are left alone.
+   */
+  private void archiveIfUnused(String gameId) {
+    try {
+      // if used again: it gets archived when it is unloaded the next time
+      runIfUnused(gameId, () -> gameStore.archive(gameId));
+    } catch (IOException | RuntimeException e) {
+      log.error("Error archiving game {}", gameId, e);
+    }
+  }
+
+  /**
+   * An operation on the stored files of a game (see
+   * {@link #runIfUnused(String, StorageOperation)}).
+   */
+  @FunctionalInterface
+  public interface StorageOperation {
+    boolean run() throws IOException;
+  }
+
+  /**
+   * Runs an operation on the stored files of a game, if the game is not in
+   * use (not loaded, no state waiting to be written, and no other operation
+   * running). No game loader can be created for the game while the operation
+   * is running, so the game cannot be loaded concurrently: accessing the game
+   * waits until the operation is done.
+   *
+   * @return the result of the operation, or false if the game is in use (then
+   * the operation has not been run)
+   */
+  public boolean runIfUnused(String gameId, StorageOperation operation)
+    throws IOException {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    AtomicBoolean claimed = new AtomicBoolean(false);
+    // only claims the game: the operation runs outside of the map, which
+    // would otherwise be blocked for other games, too, while waiting for I/O
+    gameLoaders.compute(gameId, (_, gameLoader) -> {
+      if (
+        gameLoader == null &&
+        !stateWriter.hasPendingWrite(getGameDir(gameId)) &&
+        storageOperations.putIfAbsent(gameId, done) == null
+      ) {
+        claimed.set(true);
+      }
+      return gameLoader;
+    });
+    if (!claimed.get()) {
+      return false;
+    }
+    try {
+      return operation.run();
+    } finally {
+      storageOperations.remove(gameId, done);
+      done.complete(null);
+    }
+  }
+
+  /**
+   * Unloads games which have not been used for longer than the TTL, and the
+   * least recently used games if there are more than the max. number of games
+   * in memory. Their state has already been submitted for writing when they
+   * were used the last time.
+   */
+  // package-private for tests
+  void evictUnusedGames() {
+    try {
+      long now = System.nanoTime();
+      List<GameLoader> unusedGameLoaders = gameLoaders
+        .values()
+        .stream()
+        .filter(GameLoader::isUnused)
+        .sorted(Comparator.comparingLong(GameLoader::getLastUsedNanos))
+        .toList();
+      int excessGames = gameLoaders.size() - maxResidentGames;
+      for (GameLoader gameLoader : unusedGameLoaders) {
+        boolean expired =
+          now - gameLoader.getLastUsedNanos() > residentGameTtlNanos;
+        if (!expired && excessGames <= 0) {
+          // sorted by last usage, so all others are more recent
+          break;
+        }
+        if (removeGameLoaderIfUnused(gameLoader)) {
+          excessGames--;
         }
       }
+    } catch (RuntimeException e) {
+      // do not let an exception cancel the periodic eviction
+      log.error("Error evicting unused games", e);
     }
   }
 
@@ -172,36 +528,42 @@ public class GameManager {
     client.send(new UnknownGameState());
   }
 
-  // synchronized is important here to avoid a potential double generation of the same id
-  private synchronized String generateAndReserveNewGameId() throws IOException {
-    String gameId;
-    Path gameDir;
-    boolean retry = false;
-    do {
-      gameId = RandomStringUtils.secure().next(
-        GAME_ID_LENGTH,
-        CHARACTERS_WITHOUT_AMBIGUOUS
-      );
-      gameDir = getGameDir(gameId);
-      retry = Files.exists(gameDir);
-      if (retry) {
+  private String generateAndReserveNewGameId() throws IOException {
+    while (true) {
+      // reserved in memory, so concurrently created games do not collide
+      String gameId = gameStore.getIdAllocator().reserve();
+      Path gameDir = getGameDir(gameId);
+      Files.createDirectories(Objects.requireNonNull(gameDir.getParent()));
+      try {
+        // the directory is the durable record of the id (reservations in the
+        // bitmap may have been lost in a crash)
+        Files.createDirectory(gameDir);
+        // archived games do not have a directory anymore (note: a game is
+        // archived before its directory gets deleted)
+        if (gameStore.isArchived(gameId)) {
+          Files.delete(gameDir);
+          log.info(
+            "Retrying generation of new gameId, because generated id '{}' has been archived.",
+            gameId
+          );
+          continue;
+        }
+        return gameId;
+      } catch (FileAlreadyExistsException e) {
         log.info(
           "Retrying generation of new gameId, because generated id '{}' already exists.",
           gameId
         );
       }
-    } while (retry);
-    Files.createDirectories(gameDir);
-    return gameId;
+    }
   }
 
   public Path getGameDir(String gameId) {
-    validateGameId(gameId);
-    // split gameId into two parts. this makes sure we do not create too many
-    // folders on one level
-    return gamesPath
-      .resolve(gameId.substring(0, 2))
-      .resolve(gameId.substring(2, GAME_ID_LENGTH));
+    return gameStore.getGameDir(gameId);
+  }
+
+  public static boolean isValidGameId(String gameId) {
+    return gameIdPattern.matcher(gameId).matches();
   }
 
   public static void validateGameId(String gameId) {
@@ -213,23 +575,97 @@ public class GameManager {
     }
   }
 
-  public void clientDisconnected(Client client) {
-    GameRef gameRef;
-    synchronized (this) {
-      gameRef = clientToGameRef.remove(client);
+  /**
+   * @return whether the (not archived) game contains the drawing: checked in
+   * memory if the game is loaded, via its link to the drawing otherwise
+   */
+  public boolean hasImage(String gameId, String imageName) {
+    GameLoader gameLoader = gameLoaders.get(gameId);
+    Game game = gameLoader != null ? gameLoader.getLoadedGame() : null;
+    if (game != null) {
+      return game.hasImage(imageName);
     }
+    return Files.exists(getGameDir(gameId).resolve(imageName));
+  }
+
+  /**
+   * Stories of a finished game, which have not been written to
+   * {@link Game#STORIES_FILENAME} yet.
+   * <p>
+   * Games never get loaded for this: the stories of games which have been
+   * finished before the stories were stored are stored once, after the
+   * catalog scan (see {@link #storeMissingStories()}).
+   *
+   * @return the stories (JSON), or null if none are waiting to be written
+   */
+  public byte @Nullable [] getStories(String gameId) {
+    return stateWriter.getPendingWrite(getGameDir(gameId)).stories();
+  }
+
+  /**
+   * Stores the stories of all finished games which do not have them yet
+   * (finished before the stories were stored). Games which are in use are
+   * skipped: their stories get stored by their {@link GameLoader}.
+   */
+  private void storeMissingStories() {
+    List<GameCatalog.Entry> finished = catalog.query(entry ->
+      entry.state() == GameState.State.Finished
+    );
+    int stored = 0;
+    for (GameCatalog.Entry entry : finished) {
+      String gameId = entry.gameId();
+      try {
+        if (
+          !gameStore.exists(gameId, Game.STORIES_FILENAME) &&
+          runIfUnused(gameId, () -> storeStories(gameId))
+        ) {
+          stored++;
+        }
+      } catch (IOException | RuntimeException e) {
+        log.error("Error storing the stories of game {}", gameId, e);
+      }
+    }
+    if (stored > 0) {
+      log.info("Stored the stories of {} finished games", stored);
+    }
+  }
+
+  // note: the game must not be in use (see runIfUnused())
+  private boolean storeStories(String gameId) throws IOException {
+    Path gameDir = getGameDir(gameId);
+    GameState gameState = JSONHelper.objectMapper.readValue(
+      gameStore.readFile(gameId, Game.STATE_FILENAME),
+      GameState.class
+    );
+    int replayed = GameJournal.replay(
+      gameState,
+      GameJournal.parse(GameJournal.readBytes(gameDir))
+    );
+    Game game = new Game(gameId, gameDir, gameState, replayed);
+    byte[] stories = game.getStoriesJson();
+    if (stories == null) {
+      return false;
+    }
+    GameStateWriter.writeStories(gameDir, stories);
+    return true;
+  }
+
+  public void clientDisconnected(Client client) {
+    GameRef gameRef = clientToGameRef.remove(client);
     if (gameRef == null) {
       return;
     }
-    try {
-      gameRef.useGame(game -> {
-        if (game != null) {
-          game.clientDisconnected(client);
-        }
-      });
-    } finally {
-      closeGameRef(gameRef);
-    }
+    executeInGame(gameRef, "disconnect", () -> {
+      try {
+        gameRef.useGame(game -> {
+          if (game != null) {
+            game.clientDisconnected(client);
+          }
+        });
+      } finally {
+        closeGameRef(gameRef);
+      }
+    });
   }
 
   private @Nullable GameRef getGameRefForClient(Client client) {
@@ -242,7 +678,7 @@ public class GameManager {
       log.warn("Cannot handle start. Client {} unknown", client.getId());
       return;
     }
-    gameRef.useGame(game -> {
+    executeInGame(gameRef, "start", game -> {
       game.start(client);
     });
   }
@@ -253,30 +689,119 @@ public class GameManager {
       log.warn("Cannot handle type. Client {} unknown", client.getId());
       return;
     }
-    gameRef.useGame(game -> {
+    executeInGame(gameRef, "type", game -> {
       game.type(client, typeAction);
     });
   }
 
-  public void handleReceiveDrawing(Client client, ByteBuffer image) {
+  /**
+   * Starts receiving a drawing, which arrives in several parts.
+   *
+   * @param maxBytes max. size of the drawing
+   */
+  public DrawingUpload startDrawingUpload(long maxBytes) throws IOException {
+    return new DrawingUpload(
+      uploadsPath.resolve(UUID.randomUUID() + ".png.tmp"),
+      maxBytes
+    );
+  }
+
+  /**
+   * @param uploadFile  the complete drawing (see {@link DrawingUpload}), which
+   *                    gets moved into the store or deleted
+   * @param contentHash hex encoded SHA-256 hash of the drawing
+   */
+  public void handleReceiveDrawing(
+    Client client,
+    Path uploadFile,
+    String contentHash,
+    long size
+  ) {
     GameRef gameRef = getGameRefForClient(client);
     if (gameRef == null) {
       log.warn(
         "Cannot handle receive drawing. Client {} unknown",
         client.getId()
       );
+      deleteUpload(uploadFile);
       return;
     }
-    gameRef.useGame(game -> {
-      try {
-        game.draw(client, image);
-      } catch (IOException e) {
-        log.error(
-          "Error handling draw action for client {}",
-          client.getId(),
-          e
+
+    long receivedNanos = System.nanoTime();
+    metrics.recordImageUpload(size);
+
+    // note: if the action gets skipped, the upload is deleted on the next start
+    String imageName = ImageStore.imageName(contentHash);
+    executeInGame(gameRef, "receive-drawing", () -> {
+      Game.PendingDrawing drawing = gameRef.useGame(game -> {
+        return game.prepareDrawing(client, imageName);
+      });
+      if (drawing != null) {
+        writeAndCommitDrawing(
+          client,
+          gameRef.getGameId(),
+          drawing,
+          uploadFile,
+          receivedNanos
         );
+      } else {
+        deleteUpload(uploadFile);
       }
     });
   }
+
+  private static void deleteUpload(Path uploadFile) {
+    try {
+      Files.deleteIfExists(uploadFile);
+    } catch (IOException e) {
+      log.warn("Cannot delete upload {}", uploadFile, e);
+    }
+  }
+
+  private void writeAndCommitDrawing(
+    Client client,
+    String gameId,
+    Game.PendingDrawing drawing,
+    Path uploadFile,
+    long receivedNanos
+  ) {
+    // the extra reference keeps the game loaded until the drawing is committed
+    GameRef drawingGameRef = getGameRef(gameId);
+    long writeStartNanos = System.nanoTime();
+    var _ = drawingWriter
+      .commit(uploadFile, drawing.imageName(), drawing.imagePath())
+      .whenComplete((committed, e) -> {
+        metrics.recordImageWrite(System.nanoTime() - writeStartNanos);
+        if (e != null) {
+          log.error(
+            "Error writing drawing of client {}",
+            client.getId(),
+            e
+          );
+          deleteUpload(uploadFile);
+          closeGameRef(drawingGameRef);
+          return;
+        }
+        catalog.addBytes(gameId, committed.size());
+        if (committed.newDrawing()) {
+          // variants are stored next to the drawing, and shared as well
+          thumbnailGenerator.submit(
+            gameStore.getImageStore().getPath(drawing.imageName())
+          );
+        }
+        drawingGameRef
+          .getGameLoader()
+          .execute(() -> {
+            try {
+              drawingGameRef.useGame(game -> {
+                game.commitDrawing(drawing);
+              });
+            } finally {
+              closeGameRef(drawingGameRef);
+              // the whole time from receiving the drawing until it is part of the game
+              metrics.recordAction("draw", System.nanoTime() - receivedNanos);
+            }
+          });
+      });
+  }
 }
@@ -0,0 +1,179 @@
+package net.czedik.hermann.tdt;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Metrics of the game server (exposed for Prometheus at
+ * /actuator/prometheus).
+ * <p>
+ * Durations are passed as {@link System#nanoTime()} differences, so that
+ * callers do not depend on Micrometer.
+ */
+@Component
+public class GameMetrics {
+
+  private final MeterRegistry registry;
+
+  private final Map<String, Timer> actionTimers = new ConcurrentHashMap<>();
+
+  private final Timer lockWaitTimer;
+
+  private final Timer lockHoldTimer;
+
+  private final Timer loadTimer;
+
+  private final DistributionSummary loadBytes;
+
+  private final Timer storeTimer;
+
+  private final DistributionSummary storeBytes;
+
+  private final DistributionSummary imageUploadBytes;
+
+  private final Timer imageWriteTimer;
+
+  private final Timer sendTimer;
+
+  private final Counter sendFailures;
+
+  public GameMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    lockWaitTimer = Timer.builder("tdt.game.lock.wait")
+      .description("Time waiting for the lock of a game")
+      .publishPercentileHistogram()
+      .register(registry);
+    lockHoldTimer = Timer.builder("tdt.game.lock.hold")
+      .description("Time holding the lock of a game")
+      .publishPercentileHistogram()
+      .register(registry);
+    loadTimer = Timer.builder("tdt.game.load")
+      .description("Time loading a game from disk")
+      .publishPercentileHistogram()
+      .register(registry);
+    loadBytes = DistributionSummary.builder("tdt.game.load.size")
+      .description("Size of the loaded state and journal of a game")
+      .baseUnit("bytes")
+      .register(registry);
+    storeTimer = Timer.builder("tdt.game.store")
+      .description("Time writing the changes of a game to disk")
+      .publishPercentileHistogram()
+      .register(registry);
+    storeBytes = DistributionSummary.builder("tdt.game.store.size")
+      .description("Size of the written changes of a game")
+      .baseUnit("bytes")
+      .register(registry);
+    imageUploadBytes = DistributionSummary.builder("tdt.image.upload.size")
+      .description("Size of uploaded drawings")
+      .baseUnit("bytes")
+      .publishPercentileHistogram()
+      .register(registry);
+    imageWriteTimer = Timer.builder("tdt.image.write")
+      .description("Time writing an uploaded drawing to disk")
+      .publishPercentileHistogram()
+      .register(registry);
+    sendTimer = Timer.builder("tdt.client.send")
+      .description("Time sending a message to a client")
+      .publishPercentileHistogram()
+      .register(registry);
+    sendFailures = Counter.builder("tdt.client.send.failures")
+      .description("Messages which could not be sent to a client")
+      .register(registry);
+  }
+
+  /**
+   * Time from receiving an action of a client until it has been processed.
+   */
+  public void recordAction(String action, long nanos) {
+    actionTimers
+      .computeIfAbsent(action, a ->
+        Timer.builder("tdt.game.action")
+          .description("Time from receiving an action until it is processed")
+          .tag("action", a)
+          .publishPercentileHistogram()
+          .register(registry)
+      )
+      .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordLockWait(long nanos) {
+    lockWaitTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordLockHold(long nanos) {
+    lockHoldTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordLoad(long nanos, long bytes) {
+    loadTimer.record(nanos, TimeUnit.NANOSECONDS);
+    loadBytes.record(bytes);
+  }
+
+  public void recordStore(long nanos, long bytes) {
+    storeTimer.record(nanos, TimeUnit.NANOSECONDS);
+    storeBytes.record(bytes);
+  }
+
+  public void recordImageUpload(long bytes) {
+    imageUploadBytes.record(bytes);
+  }
+
+  public void recordImageWrite(long nanos) {
+    imageWriteTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordSend(long nanos) {
+    sendTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordSendFailure() {
+    sendFailures.increment();
+  }
+
+  /**
+   * Registers a gauge, which gets sampled whenever the metrics are read.
+   */
+  public void registerGauge(
+    String name,
+    String description,
+    Supplier<Number> value
+  ) {
+    Gauge.builder(name, value).description(description).register(registry);
+  }
+
+  /**
+   * Registers the statistics of the image cache.
+   */
+  public void registerImageCache(ImageCache imageCache) {
+    FunctionCounter.builder("tdt.image.cache.hits", imageCache, c ->
+      c.getStats().hits()
+    )
+      .description("Images served from the cache")
+      .register(registry);
+    FunctionCounter.builder("tdt.image.cache.misses", imageCache, c ->
+      c.getStats().misses()
+    )
+      .description("Images which were not in the cache")
+      .register(registry);
+    FunctionCounter.builder("tdt.image.cache.evictions", imageCache, c ->
+      c.getStats().evictions()
+    )
+      .description("Images evicted from the cache")
+      .register(registry);
+    Gauge.builder("tdt.image.cache.size", imageCache, c ->
+      c.getStats().residentBytes()
+    )
+      .description("Size of all cached images")
+      .baseUnit("bytes")
+      .register(registry);
+  }
+}
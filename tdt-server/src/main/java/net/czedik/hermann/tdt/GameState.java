@@ -23,6 +23,12 @@ public class GameState {
 
   public Story @Nullable [] stories = null;
 
+  /**
+   * Sequence number of the last journal entry contained in this state (see
+   * {@link GameJournal})
+   */
+  public long journalSeq = 0;
+
   public enum State {
     WaitingForPlayers,
     Started,
@@ -0,0 +1,379 @@
+package net.czedik.hermann.tdt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind persistence of game states.
+ * <p>
+ * Changed games are only marked as dirty while the game lock is held. A
+ * background thread serializes their changes (coalescing all changes since the
+ * last flush) and writes them outside of any game lock: usually by appending
+ * to the journal of the game, sometimes by replacing the state file with a new
+ * snapshot (see {@link Game#takeStateUpdate(boolean)}).
+ * <p>
+ * Changes which have been serialized but not yet written are visible via
+ * {@link #getPendingWrite(Path)}, so that a game which gets reloaded in the
+ * meantime does not miss them.
+ */
+public class GameStateWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(
+    GameStateWriter.class
+  );
+
+  /**
+   * Serialized changes of one game which still need to be written.
+   *
+   * @param snapshot       new state file (replaces the journal), or null
+   * @param journalEntries chunks of journal entries to be appended (after the
+   *                       snapshot, if there is one)
+   * @param stories        stories of the finished game, or null
+   */
+  public record PendingWrite(
+    byte @Nullable [] snapshot,
+    List<byte[]> journalEntries,
+    byte @Nullable [] stories
+  ) {
+    private static final PendingWrite EMPTY = new PendingWrite(
+      null,
+      List.of(),
+      null
+    );
+
+    private boolean isEmpty() {
+      return snapshot == null && journalEntries.isEmpty() && stories == null;
+    }
+
+    private long size() {
+      long size = snapshot != null ? snapshot.length : 0;
+      for (byte[] entries : journalEntries) {
+        size += entries.length;
+      }
+      if (stories != null) {
+        size += stories.length;
+      }
+      return size;
+    }
+
+    private PendingWrite add(Game.StateUpdate stateUpdate) {
+      byte[] newStories =
+        stateUpdate.stories() != null ? stateUpdate.stories() : stories;
+      byte[] newSnapshot = stateUpdate.snapshot();
+      if (newSnapshot != null) {
+        // the snapshot contains all previous journal entries
+        return new PendingWrite(newSnapshot, List.of(), newStories);
+      }
+      byte[] newEntries = stateUpdate.journalEntries();
+      if (newEntries == null) {
+        return new PendingWrite(snapshot, journalEntries, newStories);
+      }
+      List<byte[]> newJournalEntries = new ArrayList<>(journalEntries);
+      newJournalEntries.add(newEntries);
+      return new PendingWrite(
+        snapshot,
+        List.copyOf(newJournalEntries),
+        newStories
+      );
+    }
+
+    // removes the given (written) changes, unless they have been superseded by a newer snapshot in the meantime
+    private PendingWrite remove(PendingWrite written) {
+      byte[] remainingStories = stories != written.stories ? stories : null;
+      if (snapshot != written.snapshot) {
+        return new PendingWrite(snapshot, journalEntries, remainingStories);
+      }
+      int writtenJournalEntries = 0;
+      while (
+        writtenJournalEntries < written.journalEntries.size() &&
+        writtenJournalEntries < journalEntries.size() &&
+        journalEntries.get(writtenJournalEntries) ==
+        written.journalEntries.get(writtenJournalEntries)
+      ) {
+        writtenJournalEntries++;
+      }
+      return new PendingWrite(
+        null,
+        journalEntries.subList(writtenJournalEntries, journalEntries.size()),
+        remainingStories
+      );
+    }
+  }
+
+  private final long flushIntervalMillis;
+
+  private final GameMetrics metrics;
+
+  private final ScheduledThreadPoolExecutor executorService =
+    new ScheduledThreadPoolExecutor(1);
+
+  // loaders of changed games, whose state still needs to be serialized
+  private final Set<GameLoader> dirtyGameLoaders =
+    ConcurrentHashMap.newKeySet();
+
+  // serialized changes which still need to be written (key: game directory)
+  private final Map<Path, PendingWrite> pendingWrites =
+    new ConcurrentHashMap<>();
+
+  private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+  public GameStateWriter(long flushIntervalMillis, GameMetrics metrics) {
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.metrics = Objects.requireNonNull(metrics);
+    // no need to wait for a scheduled flush on shutdown, as we flush anyway
+    executorService.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  /**
+   * Registers a loader whose game state has changed. The changes will be
+   * serialized and stored with the next flush.
+   */
+  public void markDirty(GameLoader gameLoader) {
+    dirtyGameLoaders.add(gameLoader);
+    scheduleFlush();
+  }
+
+  /**
+   * Queues already serialized changes for writing (e.g. when a game gets
+   * unloaded).
+   */
+  public void submit(Path gameDir, Game.StateUpdate stateUpdate) {
+    pendingWrites.compute(gameDir, (dir, pending) ->
+      (pending != null ? pending : PendingWrite.EMPTY).add(stateUpdate)
+    );
+    scheduleFlush();
+  }
+
+  /**
+   * @return the changes which have been submitted for the given game, but not
+   * yet written
+   */
+  public PendingWrite getPendingWrite(Path gameDir) {
+    return pendingWrites.getOrDefault(gameDir, PendingWrite.EMPTY);
+  }
+
+  /**
+   * @return whether there are changes of the given game, which have not been
+   * written yet
+   */
+  public boolean hasPendingWrite(Path gameDir) {
+    return pendingWrites.containsKey(gameDir);
+  }
+
+  private void scheduleFlush() {
+    if (flushScheduled.compareAndSet(false, true)) {
+      try {
+        var _ = executorService.schedule(
+          this::flushSafely,
+          flushIntervalMillis,
+          TimeUnit.MILLISECONDS
+        );
+      } catch (RejectedExecutionException e) {
+        // already shut down: write directly
+        flushScheduled.set(false);
+        writePendingChanges();
+      }
+    }
+  }
+
+  private void flushSafely() {
+    flushScheduled.set(false);
+    try {
+      flush();
+    } catch (Throwable t) {
+      log.error("Flushing game states failed", t);
+    }
+  }
+
+  /**
+   * Serializes the changes of all dirty games and writes all pending changes.
+   */
+  public void flush() {
+    for (GameLoader gameLoader : dirtyGameLoaders) {
+      dirtyGameLoaders.remove(gameLoader);
+      // note: this briefly takes the lock of the game (only for serialization)
+      gameLoader.submitStateIfChanged();
+    }
+    writePendingChanges();
+  }
+
+  // synchronized, so that two writes to the same game can never overlap
+  private synchronized void writePendingChanges() {
+    boolean failed = false;
+    for (Path gameDir : pendingWrites.keySet()) {
+      PendingWrite pendingWrite = getPendingWrite(gameDir);
+      try {
+        long startNanos = System.nanoTime();
+        write(gameDir, pendingWrite);
+        metrics.recordStore(
+          System.nanoTime() - startNanos,
+          pendingWrite.size()
+        );
+        pendingWrites.computeIfPresent(gameDir, (dir, pending) -> {
+          PendingWrite remaining = pending.remove(pendingWrite);
+          return remaining.isEmpty() ? null : remaining;
+        });
+      } catch (IOException e) {
+        log.error("Error storing state of game {}", gameDir, e);
+        failed = true;
+      }
+    }
+    if (failed && !executorService.isShutdown()) {
+      // keep the failed changes pending and retry later
+      scheduleFlush();
+    }
+  }
+
+  private static void write(Path gameDir, PendingWrite pendingWrite)
+    throws IOException {
+    Path journalFile = gameDir.resolve(GameJournal.JOURNAL_FILENAME);
+    byte[] stories = pendingWrite.stories();
+    if (stories != null) {
+      // before the state, so that the stories exist for every finished state file
+      writeAtomically(gameDir.resolve(Game.STORIES_FILENAME), stories);
+    }
+    byte[] snapshot = pendingWrite.snapshot();
+    if (snapshot != null) {
+      log.info("Writing state of {} ({} bytes)", gameDir, snapshot.length);
+      writeAtomically(gameDir.resolve(Game.STATE_FILENAME), snapshot);
+      // all entries of the journal are contained in the snapshot now
+      Files.deleteIfExists(journalFile);
+    }
+    if (!pendingWrite.journalEntries().isEmpty()) {
+      appendToJournal(journalFile, pendingWrite.journalEntries());
+    }
+  }
+
+  private static void appendToJournal(
+    Path journalFile,
+    List<byte[]> journalEntries
+  ) throws IOException {
+    try (
+      FileChannel channel = FileChannel.open(
+        journalFile,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+      )
+    ) {
+      long size = channel.size();
+      long end = endOfLastLine(channel, size);
+      if (end < size) {
+        // torn last line (crash while appending): would swallow the new entries
+        log.warn(
+          "Truncating torn last line of journal {} ({} bytes)",
+          journalFile,
+          size - end
+        );
+        channel.truncate(end);
+      }
+      channel.position(end);
+      for (byte[] entries : journalEntries) {
+        writeFully(channel, entries);
+      }
+      // once per batch: the entries of all flushed changes are durable
+      channel.force(false);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, byte[] content)
+    throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(content);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * @return the position after the last newline of the journal (0 if there is
+   * none)
+   */
+  private static long endOfLastLine(FileChannel channel, long size)
+    throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    long end = size;
+    while (end > 0) {
+      int length = (int) Math.min(buffer.capacity(), end);
+      buffer.clear().limit(length);
+      long start = end - length;
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, start + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of journal");
+        }
+      }
+      for (int i = length - 1; i >= 0; i--) {
+        if (buffer.get(i) == '\n') {
+          return start + i + 1;
+        }
+      }
+      end = start;
+    }
+    return 0;
+  }
+
+  /**
+   * Writes the stories of a game right away, bypassing the pending writes
+   * (for games which are not in use).
+   */
+  static void writeStories(Path gameDir, byte[] stories) throws IOException {
+    writeAtomically(gameDir.resolve(Game.STORIES_FILENAME), stories);
+  }
+
+  // writes to a temporary file first, so that a crash never leaves a torn file
+  private static void writeAtomically(Path file, byte[] content)
+    throws IOException {
+    Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try (
+      FileChannel channel = FileChannel.open(
+        tmpFile,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE
+      )
+    ) {
+      writeFully(channel, content);
+      // before the move: otherwise a crash may leave an empty file behind
+      channel.force(false);
+    }
+    Files.move(
+      tmpFile,
+      file,
+      StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE
+    );
+  }
+
+  /**
+   * Stops the background flushing and writes everything which is still
+   * pending.
+   */
+  public void shutdown() {
+    executorService.shutdown();
+    try {
+      if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+        log.warn("Timeout while waiting for running flush");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+}
@@ -0,0 +1,317 @@
+package net.czedik.hermann.tdt;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Storage of the files of all games (state, stories and drawings), in two
+ * tiers:
+ * <ul>
+ * <li>hot: one directory per game, for the games which are being played</li>
+ * <li>cold: finished games, which have been compacted into segments (see
+ * {@link SegmentStore}), so that they do not need a directory with many small
+ * files each</li>
+ * </ul>
+ * Finished games get archived (moved from their directory into a segment)
+ * once they have not been used for a while (see {@link GameManager}).
+ * <p>
+ * Drawings are shared by all games (see {@link ImageStore}): the directory of
+ * a game only contains links to them.
+ */
+@Component
+public class GameStore {
+
+  private static final Logger log = LoggerFactory.getLogger(GameStore.class);
+
+  private final Path gamesPath;
+
+  private final SegmentStore segments;
+
+  private final ImageStore images;
+
+  private final GameIdAllocator idAllocator;
+
+  /**
+   * @param bytes              total size of the files of a game
+   * @param lastModifiedMillis when the files have been changed the last time
+   */
+  public record FileStats(long bytes, long lastModifiedMillis) {}
+
+  /**
+   * @param maxSegmentBytes max. size of a segment file
+   */
+  public GameStore(
+    @Value("${storage.dir}") String storageDir,
+    @Value("${storage.segment.max-bytes:1073741824}") long maxSegmentBytes
+  ) throws IOException {
+    Path storageDirPath = Path.of(storageDir).toAbsolutePath().normalize();
+    gamesPath = storageDirPath.resolve("games");
+    segments = new SegmentStore(
+      storageDirPath.resolve("segments"),
+      maxSegmentBytes
+    );
+    images = new ImageStore(storageDirPath.resolve("images"));
+    // fail fast: the reference counts of the drawings rely on hard links
+    Files.createDirectories(gamesPath);
+    images.checkLinks(gamesPath);
+    idAllocator = new GameIdAllocator(
+      storageDirPath.resolve("game-ids.bitmap"),
+      this::forEachGameId
+    );
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    idAllocator.close();
+    segments.close();
+  }
+
+  /**
+   * Deletes all files of a game (in both tiers), and releases its id, unless
+   * the game has been finished: its stories are cached as immutable by their
+   * URL, which must therefore never refer to another game (note: only the
+   * bitmap of the {@link GameIdAllocator} keeps such an id reserved).
+   * <p>
+   * The caller needs to make sure that the game is not in use.
+   *
+   * @return false if the game does not exist
+   */
+  public boolean delete(String gameId) throws IOException {
+    Path gameDir = getGameDir(gameId);
+    // only finished games get archived
+    boolean finished =
+      segments.contains(gameId) ||
+      Files.exists(gameDir.resolve(Game.STORIES_FILENAME));
+    boolean deleted = false;
+    if (Files.isDirectory(gameDir)) {
+      List<Path> files;
+      try (Stream<Path> dirFiles = Files.list(gameDir)) {
+        files = dirFiles.toList();
+      }
+      for (Path file : files) {
+        Files.delete(file);
+      }
+      Files.delete(gameDir);
+      releaseImages(files);
+      deleted = true;
+    }
+    if (segments.remove(gameId)) {
+      deleted = true;
+    }
+    if (deleted) {
+      if (!finished) {
+        idAllocator.release(gameId);
+      }
+      log.info("Deleted game {}", gameId);
+    }
+    return deleted;
+  }
+
+  // the files have been deleted: drawings which are not used by other games
+  // anymore are deleted, too
+  private void releaseImages(List<Path> files) throws IOException {
+    for (Path file : files) {
+      String name = file.getFileName().toString();
+      if (ImageStore.isContentAddressed(name)) {
+        images.deleteIfUnreferenced(name);
+      }
+    }
+  }
+
+  // all games, in both tiers (slow: only for rebuilding the id bitmap)
+  private void forEachGameId(Consumer<String> action) throws IOException {
+    for (Path prefixDir : listGameDirGroups()) {
+      listGameIds(prefixDir).forEach(action);
+    }
+    segments.forEachGameId(action);
+  }
+
+  /**
+   * @return the directories which group the directories of the games (see
+   * {@link #getGameDir(String)}), e.g. for scanning them in parallel
+   */
+  public List<Path> listGameDirGroups() throws IOException {
+    if (!Files.isDirectory(gamesPath)) {
+      return List.of();
+    }
+    try (Stream<Path> prefixDirs = Files.list(gamesPath)) {
+      return prefixDirs.filter(Files::isDirectory).toList();
+    }
+  }
+
+  /**
+   * @return ids of the games (in the hot tier) in a group directory
+   */
+  public List<String> listGameIds(Path gameDirGroup) throws IOException {
+    String prefix = gameDirGroup.getFileName().toString();
+    try (Stream<Path> gameDirs = Files.list(gameDirGroup)) {
+      return gameDirs
+        .map(gameDir -> prefix + gameDir.getFileName())
+        .filter(GameManager::isValidGameId)
+        .toList();
+    }
+  }
+
+  public List<String> listArchivedGameIds() {
+    List<String> gameIds = new ArrayList<>();
+    segments.forEachGameId(gameIds::add);
+    return gameIds;
+  }
+
+  /**
+   * @return size and modification time of the files of a game (including its
+   * directory, which may not contain any files yet; for an archived game:
+   * when it has been archived), or null if the game does not exist
+   */
+  public @Nullable FileStats getFileStats(String gameId) throws IOException {
+    Path gameDir = getGameDir(gameId);
+    try (Stream<Path> files = Files.list(gameDir)) {
+      long bytes = 0;
+      long lastModifiedMillis = Files.getLastModifiedTime(gameDir).toMillis();
+      for (Path file : files.toList()) {
+        BasicFileAttributes attributes = Files.readAttributes(
+          file,
+          BasicFileAttributes.class
+        );
+        bytes += attributes.size();
+        lastModifiedMillis = Math.max(
+          lastModifiedMillis,
+          attributes.lastModifiedTime().toMillis()
+        );
+      }
+      return new FileStats(bytes, lastModifiedMillis);
+    } catch (NoSuchFileException e) {
+      return segments.getFileStats(gameId);
+    }
+  }
+
+  /**
+   * @return the directory of a game in the hot tier (which does not exist
+   * anymore, once the game has been archived)
+   */
+  public Path getGameDir(String gameId) {
+    GameManager.validateGameId(gameId);
+    // split gameId into two parts. this makes sure we do not create too many
+    // folders on one level
+    return gamesPath
+      .resolve(gameId.substring(0, 2))
+      .resolve(gameId.substring(2));
+  }
+
+  public GameIdAllocator getIdAllocator() {
+    return idAllocator;
+  }
+
+  public ImageStore getImageStore() {
+    return images;
+  }
+
+  public boolean isArchived(String gameId) {
+    return segments.contains(gameId);
+  }
+
+  /**
+   * Reads a file of a game, from its directory or from its segment.
+   *
+   * @throws NoSuchFileException if the game does not have this file
+   */
+  public byte[] readFile(String gameId, String name) throws IOException {
+    try {
+      return Files.readAllBytes(getGameDir(gameId).resolve(name));
+    } catch (NoSuchFileException e) {
+      ByteBuffer archived = segments.read(gameId, name);
+      if (archived == null) {
+        throw e;
+      }
+      byte[] content = new byte[archived.remaining()];
+      archived.get(content);
+      return content;
+    }
+  }
+
+  /**
+   * @return a file of an archived game (a read-only buffer, which is backed by
+   * the mapped segment), or null if the game is not archived or does not have
+   * this file
+   */
+  public @Nullable ByteBuffer readArchivedFile(String gameId, String name)
+    throws IOException {
+    return segments.read(gameId, name);
+  }
+
+  public boolean exists(String gameId, String name) throws IOException {
+    return (
+      Files.exists(getGameDir(gameId).resolve(name)) ||
+      segments.read(gameId, name) != null
+    );
+  }
+
+  /**
+   * Moves the files of a finished game from its directory into a segment.
+   * <p>
+   * The caller needs to make sure that the game is not in use, and that its
+   * state has been written completely.
+   *
+   * @return whether the game has been archived (false, if it is not finished
+   * or has already been archived)
+   */
+  public boolean archive(String gameId) throws IOException {
+    Path gameDir = getGameDir(gameId);
+    // the stories are written when the game is finished (before its final
+    // state), and there is no journal once the final state has been written
+    if (
+      !Files.exists(gameDir.resolve(Game.STORIES_FILENAME)) ||
+      Files.exists(gameDir.resolve(GameJournal.JOURNAL_FILENAME))
+    ) {
+      return false;
+    }
+    List<Path> files;
+    try (Stream<Path> dirFiles = Files.list(gameDir)) {
+      files = dirFiles
+        .filter(Files::isRegularFile)
+        .filter(f -> !f.getFileName().toString().endsWith(".tmp"))
+        .sorted()
+        .toList();
+    }
+    // the variants of the drawings are shared, and get deleted together with
+    // the drawings: the segment contains copies of them, too
+    List<Path> archivedFiles = new ArrayList<>(files);
+    for (Path file : files) {
+      String name = file.getFileName().toString();
+      if (ImageStore.isContentAddressed(name)) {
+        archivedFiles.addAll(images.listVariants(name));
+      }
+    }
+    segments.append(gameId, archivedFiles);
+
+    // from now on the game is read from the segment
+    for (Path file : files) {
+      Files.delete(file);
+    }
+    try (Stream<Path> leftovers = Files.list(gameDir)) {
+      for (Path leftover : leftovers.toList()) {
+        Files.delete(leftover);
+      }
+    }
+    Files.delete(gameDir);
+    log.info("Archived game {} ({} files)", gameId, files.size());
+
+    // the segment contains copies of the drawings of the game
+    releaseImages(files);
+    return true;
+  }
+}
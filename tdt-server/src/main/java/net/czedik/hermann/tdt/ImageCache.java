@@ -0,0 +1,149 @@
+package net.czedik.hermann.tdt;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory cache of drawings, bounded by the total number of bytes, with
+ * least recently used eviction.
+ * <p>
+ * When a game finishes, every player loads all images of the game at once.
+ * New drawings are therefore put into the cache as soon as they have been
+ * written, so that these requests do not need to go to the disk.
+ * <p>
+ * Images are cached by name only: names are unique (drawings are named by
+ * their content hash, see {@link ImageStore}), so the same drawing is cached
+ * only once for all games containing it.
+ */
+@Component
+public class ImageCache {
+
+  private static final Logger log = LoggerFactory.getLogger(ImageCache.class);
+
+  /**
+   * @param hits          number of lookups which found the image
+   * @param misses        number of lookups which did not find the image
+   * @param evictions     number of images evicted to stay within the budget
+   * @param residentBytes number of bytes of all cached images
+   * @param images        number of cached images
+   */
+  public record Stats(
+    long hits,
+    long misses,
+    long evictions,
+    long residentBytes,
+    int images
+  ) {}
+
+  private final long maxBytes;
+
+  private final boolean offHeap;
+
+  // guarded by this; iteration order is from least to most recently used
+  private final LinkedHashMap<String, ByteBuffer> images = new LinkedHashMap<>(
+    16,
+    0.75f,
+    true
+  );
+
+  // guarded by this
+  private long residentBytes = 0;
+
+  // guarded by this
+  private long hits = 0;
+
+  // guarded by this
+  private long misses = 0;
+
+  // guarded by this
+  private long evictions = 0;
+
+  /**
+   * @param maxBytes max. total size of the cached images (0 disables the
+   *                 cache)
+   * @param offHeap  whether to store the images in direct buffers, outside of
+   *                 the Java heap
+   */
+  public ImageCache(
+    @Value("${image-cache.max-bytes:67108864}") long maxBytes,
+    @Value("${image-cache.off-heap:false}") boolean offHeap
+  ) {
+    this.maxBytes = maxBytes;
+    this.offHeap = offHeap;
+    log.info(
+      "Image cache with max. {} bytes ({})",
+      maxBytes,
+      offHeap ? "off-heap" : "on-heap"
+    );
+  }
+
+  /**
+   * @return whether an image of the given size can be cached at all
+   */
+  public boolean fits(long size) {
+    return size <= maxBytes;
+  }
+
+  /**
+   * Puts an image into the cache. Images which are larger than the whole
+   * budget are not cached.
+   */
+  public void put(String imageName, byte[] image) {
+    if (!fits(image.length)) {
+      return;
+    }
+    ByteBuffer buffer;
+    if (offHeap) {
+      buffer = ByteBuffer.allocateDirect(image.length).put(image).flip();
+    } else {
+      buffer = ByteBuffer.wrap(image.clone());
+    }
+    Objects.requireNonNull(imageName);
+    synchronized (this) {
+      ByteBuffer previous = images.put(imageName, buffer.asReadOnlyBuffer());
+      if (previous != null) {
+        residentBytes -= previous.capacity();
+      }
+      residentBytes += image.length;
+      evictToBudget();
+    }
+  }
+
+  // note: caller must hold the lock
+  private void evictToBudget() {
+    Iterator<Map.Entry<String, ByteBuffer>> it = images.entrySet().iterator();
+    while (residentBytes > maxBytes && it.hasNext()) {
+      ByteBuffer evicted = it.next().getValue();
+      it.remove();
+      residentBytes -= evicted.capacity();
+      evictions++;
+    }
+  }
+
+  /**
+   * @return the image (a read-only buffer, which may be shared by concurrent
+   * readers: use {@link ByteBuffer#duplicate()} before changing its position),
+   * or null if the image is not cached
+   */
+  public synchronized @Nullable ByteBuffer get(String imageName) {
+    ByteBuffer image = images.get(imageName);
+    if (image == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return image;
+  }
+
+  public synchronized Stats getStats() {
+    return new Stats(hits, misses, evictions, residentBytes, images.size());
+  }
+}
@@ -0,0 +1,243 @@
+package net.czedik.hermann.tdt;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Sends (immutable) images: with long-lived caching headers, support for
+ * conditional requests (304) and single byte ranges, and zero-copy transfer
+ * of files (via sendfile, if the servlet container supports it).
+ * <p>
+ * Other immutable content (like the stories of finished games) can be sent
+ * the same way, with its own content type.
+ */
+public final class ImageResponses {
+
+  // images never change (new drawings get new names), so they can be cached "forever"
+  private static final String CACHE_CONTROL = Objects.requireNonNull(
+    CacheControl.maxAge(365, TimeUnit.DAYS)
+      .cachePublic()
+      .immutable()
+      .getHeaderValue()
+  );
+
+  // request attributes of Tomcat for sending a file via sendfile
+  private static final String SENDFILE_SUPPORT_ATTR =
+    "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME_ATTR =
+    "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START_ATTR =
+    "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END_ATTR =
+    "org.apache.tomcat.sendfile.end";
+
+  private ImageResponses() {
+    // hide constructor
+  }
+
+  /**
+   * Byte range to be sent (end exclusive)
+   */
+  private record Range(long start, long end) {
+    long length() {
+      return end - start;
+    }
+  }
+
+  public static void sendFile(
+    HttpServletRequest request,
+    HttpServletResponse response,
+    Path file,
+    String etag
+  ) throws IOException {
+    sendFile(request, response, file, etag, MediaType.IMAGE_PNG_VALUE);
+  }
+
+  public static void sendFile(
+    HttpServletRequest request,
+    HttpServletResponse response,
+    Path file,
+    String etag,
+    String contentType
+  ) throws IOException {
+    try (FileChannel channel = FileChannel.open(file)) {
+      long size = channel.size();
+      long lastModified = file.toFile().lastModified();
+      Range range = prepareResponse(
+        request,
+        response,
+        etag,
+        lastModified,
+        size,
+        contentType
+      );
+      if (range == null) {
+        return;
+      }
+      if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+        // the container sends the file after we return, without copying it through the JVM
+        request.setAttribute(
+          SENDFILE_FILENAME_ATTR,
+          file.toAbsolutePath().toString()
+        );
+        request.setAttribute(SENDFILE_START_ATTR, range.start());
+        request.setAttribute(SENDFILE_END_ATTR, range.end());
+      } else {
+        WritableByteChannel out = Channels.newChannel(
+          response.getOutputStream()
+        );
+        long position = range.start();
+        while (position < range.end()) {
+          position += channel.transferTo(
+            position,
+            range.end() - position,
+            out
+          );
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends an image from memory.
+   */
+  public static void sendBytes(
+    HttpServletRequest request,
+    HttpServletResponse response,
+    ByteBuffer image,
+    String etag
+  ) throws IOException {
+    sendBytes(request, response, image, etag, MediaType.IMAGE_PNG_VALUE);
+  }
+
+  public static void sendBytes(
+    HttpServletRequest request,
+    HttpServletResponse response,
+    ByteBuffer image,
+    String etag,
+    String contentType
+  ) throws IOException {
+    // the image has no last modified timestamp: only the ETag is used
+    Range range = prepareResponse(
+      request,
+      response,
+      etag,
+      -1,
+      image.limit(),
+      contentType
+    );
+    if (range == null) {
+      return;
+    }
+    ByteBuffer content = image
+      .duplicate()
+      .limit((int) range.end())
+      .position((int) range.start());
+    WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+    while (content.hasRemaining()) {
+      out.write(content);
+    }
+  }
+
+  /**
+   * Sets the headers, and handles conditional and range requests.
+   *
+   * @return the range to be sent, or null if no body needs to be sent
+   */
+  private static @Nullable Range prepareResponse(
+    HttpServletRequest request,
+    HttpServletResponse response,
+    String etag,
+    long lastModified,
+    long size,
+    String contentType
+  ) throws IOException {
+    response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+    // sets ETag and Last-Modified, and the status 304 if the client has the image already
+    if (
+      new ServletWebRequest(request, response).checkNotModified(
+        etag,
+        lastModified
+      )
+    ) {
+      return null;
+    }
+
+    response.setContentType(contentType);
+
+    Range range = new Range(0, size);
+    String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+    if (rangeHeader != null && isIfRangeSatisfied(request, etag)) {
+      List<HttpRange> httpRanges;
+      try {
+        httpRanges = HttpRange.parseRanges(rangeHeader);
+      } catch (IllegalArgumentException e) {
+        httpRanges = List.of();
+      }
+      // multiple ranges are not supported: the full content is sent then (which is allowed)
+      if (httpRanges.size() == 1) {
+        HttpRange httpRange = httpRanges.get(0);
+        long start;
+        long end;
+        try {
+          start = httpRange.getRangeStart(size);
+          end = httpRange.getRangeEnd(size) + 1;
+        } catch (IllegalArgumentException e) {
+          start = size;
+          end = size;
+        }
+        if (start >= size || start >= end) {
+          response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+          response.sendError(
+            HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE
+          );
+          return null;
+        }
+        range = new Range(start, end);
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(
+          HttpHeaders.CONTENT_RANGE,
+          "bytes " + start + "-" + (end - 1) + "/" + size
+        );
+      }
+    }
+    response.setContentLengthLong(range.length());
+    return range;
+  }
+
+  private static boolean isIfRangeSatisfied(
+    HttpServletRequest request,
+    String etag
+  ) {
+    String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    return ifRange == null || ifRange.equals(etag);
+  }
+
+  /**
+   * @return strong ETag for an image with the given (unique and immutable)
+   * name: the content hash for drawings in the {@link ImageStore}, so that the
+   * same drawing has the same ETag in all games
+   */
+  public static String etagForImage(String imageName) {
+    String tag = ImageStore.isContentAddressed(imageName)
+      ? imageName.substring(0, imageName.length() - ".png".length())
+      : imageName;
+    return "\"" + tag + "\"";
+  }
+}
@@ -0,0 +1,202 @@
+package net.czedik.hermann.tdt;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed storage of drawings: every drawing is named by the
+ * SHA-256 hash of its content, and stored only once, no matter how many games
+ * contain it (e.g. blank canvases, or uploads which have been retried).
+ * <p>
+ * Games reference a drawing via a hard link in their directory, so the link
+ * count of a drawing is its reference count: deleting a game (or archiving
+ * it) releases its references, and a drawing without references can be
+ * deleted (see {@link #deleteIfUnreferenced(String)}). Because every link is a
+ * complete file, a game never loses a drawing, even if the drawing gets
+ * deleted here concurrently. So the games must be stored on the same file
+ * system as the drawings (see {@link #checkLinks(Path)}).
+ * <p>
+ * Downscaled variants (see {@link ThumbnailGenerator}) are stored next to the
+ * drawings, and are shared by all games as well.
+ */
+public class ImageStore {
+
+  private static final Logger log = LoggerFactory.getLogger(ImageStore.class);
+
+  private static final String PNG_SUFFIX = ".png";
+
+  private static final Pattern contentHashPattern = Pattern.compile(
+    "[0-9a-f]{64}"
+  );
+
+  private final Path imagesDir;
+
+  public ImageStore(Path imagesDir) throws IOException {
+    this.imagesDir = Objects.requireNonNull(imagesDir);
+    Files.createDirectories(imagesDir);
+  }
+
+  /**
+   * @param contentHash hex encoded SHA-256 hash of the drawing
+   */
+  public static String imageName(String contentHash) {
+    if (!contentHashPattern.matcher(contentHash).matches()) {
+      throw new IllegalArgumentException(
+        "Invalid content hash: " + contentHash
+      );
+    }
+    return contentHash + PNG_SUFFIX;
+  }
+
+  /**
+   * @return whether the image (or a variant of it) is stored here, as opposed
+   * to an image with a random name, which has been uploaded before
+   */
+  public static boolean isContentAddressed(String imageName) {
+    return (
+      imageName.length() > 64 &&
+      contentHashPattern.matcher(imageName.substring(0, 64)).matches()
+    );
+  }
+
+  /**
+   * @return path of a content-addressed image (which may not exist)
+   */
+  public Path getPath(String imageName) {
+    if (!isContentAddressed(imageName)) {
+      throw new IllegalArgumentException("Invalid image name: " + imageName);
+    }
+    // split by the first two characters of the hash, so that there are not
+    // too many files in one directory
+    return imagesDir.resolve(imageName.substring(0, 2)).resolve(imageName);
+  }
+
+  /**
+   * Adds an uploaded drawing and links it to the given path of a game.
+   *
+   * @param uploadFile complete drawing, which gets moved here (or deleted, if
+   *                   the same drawing is already stored)
+   * @return whether the drawing is new (false: an existing drawing has been
+   * reused)
+   */
+  public boolean addAndLink(Path uploadFile, String imageName, Path link)
+    throws IOException {
+    Path image = getPath(imageName);
+    if (Files.exists(image)) {
+      try {
+        createLink(link, image);
+        Files.delete(uploadFile);
+        log.info("Reusing stored drawing {}", imageName);
+        return false;
+      } catch (NoSuchFileException e) {
+        // deleted concurrently: store the upload instead
+      }
+    }
+    Files.createDirectories(Objects.requireNonNull(image.getParent()));
+    // atomic, so that a partially written drawing never gets served (if two
+    // equal drawings are added concurrently, one replaces the other)
+    Files.move(uploadFile, image, StandardCopyOption.ATOMIC_MOVE);
+    createLink(link, image);
+    return true;
+  }
+
+  private static void createLink(Path link, Path image) throws IOException {
+    try {
+      Files.createLink(link, image);
+    } catch (FileAlreadyExistsException e) {
+      // the game already contains this drawing
+    }
+  }
+
+  /**
+   * Checks that drawings can be hard linked into the given directory (e.g.
+   * it must be on the same file system). A copy instead of a link would not
+   * be counted as a reference.
+   *
+   * @throws IOException if hard links are not supported
+   */
+  public void checkLinks(Path linkDir) throws IOException {
+    Path probe = Files.createTempFile(imagesDir, "link-probe", ".tmp");
+    Path link = linkDir.resolve(probe.getFileName());
+    try {
+      Files.createLink(link, probe);
+      Files.delete(link);
+    } catch (UnsupportedOperationException | FileSystemException e) {
+      throw new IOException(
+        "Cannot hard link drawings from " + imagesDir + " into " + linkDir,
+        e
+      );
+    } finally {
+      Files.delete(probe);
+    }
+  }
+
+  /**
+   * @return number of games which reference the drawing (-1 if unknown, e.g.
+   * because the file system has no link counts)
+   */
+  public int getReferenceCount(String imageName) throws IOException {
+    try {
+      return (int) Files.getAttribute(getPath(imageName), "unix:nlink") - 1;
+    } catch (UnsupportedOperationException | IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @return the stored variants of a drawing (see
+   * {@link ThumbnailGenerator#variantName(String, int)})
+   */
+  public List<Path> listVariants(String imageName) throws IOException {
+    Path image = getPath(imageName);
+    String baseName = imageName.substring(
+      0,
+      imageName.length() - PNG_SUFFIX.length()
+    );
+    List<Path> variants = new ArrayList<>();
+    try (
+      DirectoryStream<Path> stream = Files.newDirectoryStream(
+        Objects.requireNonNull(image.getParent()),
+        baseName + "_*" + PNG_SUFFIX
+      )
+    ) {
+      stream.forEach(variants::add);
+    } catch (NoSuchFileException e) {
+      // no drawing with the same first two characters of the hash
+    }
+    return variants;
+  }
+
+  /**
+   * Deletes a drawing (and its variants), if no game references it anymore.
+   *
+   * @return whether the drawing has been deleted
+   */
+  public boolean deleteIfUnreferenced(String imageName) throws IOException {
+    try {
+      if (getReferenceCount(imageName) != 0) {
+        return false;
+      }
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    for (Path variant : listVariants(imageName)) {
+      Files.deleteIfExists(variant);
+    }
+    Files.deleteIfExists(getPath(imageName));
+    log.info("Deleted unreferenced drawing {}", imageName);
+    return true;
+  }
+}
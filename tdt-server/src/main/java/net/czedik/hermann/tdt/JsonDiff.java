@@ -0,0 +1,113 @@
+package net.czedik.hermann.tdt;
+
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.JsonNodeFactory;
+import tools.jackson.databind.node.ObjectNode;
+
+/**
+ * Computes the difference of two JSON documents as a JSON Patch (RFC 6902),
+ * using the operations add, remove and replace.
+ * <p>
+ * Arrays are compared element by element: appended elements become adds,
+ * removed trailing elements become removes (from the back, so that the
+ * indices stay valid). This is cheap and optimal for the typical changes of
+ * player states (an element appended, an entry changed).
+ */
+public final class JsonDiff {
+
+  private JsonDiff() {
+    // hide constructor
+  }
+
+  public static ArrayNode diff(JsonNode source, JsonNode target) {
+    ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+    diff("", source, target, patch);
+    return patch;
+  }
+
+  private static void diff(
+    String path,
+    JsonNode source,
+    JsonNode target,
+    ArrayNode patch
+  ) {
+    if (source.equals(target)) {
+      return;
+    }
+    if (source.isObject() && target.isObject()) {
+      diffObjects(path, source, target, patch);
+    } else if (source.isArray() && target.isArray()) {
+      diffArrays(path, source, target, patch);
+    } else {
+      patch.add(operation("replace", path, target));
+    }
+  }
+
+  private static void diffObjects(
+    String path,
+    JsonNode source,
+    JsonNode target,
+    ArrayNode patch
+  ) {
+    for (Map.Entry<String, JsonNode> property : source.properties()) {
+      String propertyPath = path + "/" + escape(property.getKey());
+      JsonNode targetValue = target.get(property.getKey());
+      if (targetValue == null) {
+        patch.add(operation("remove", propertyPath, null));
+      } else {
+        diff(propertyPath, property.getValue(), targetValue, patch);
+      }
+    }
+    for (Map.Entry<String, JsonNode> property : target.properties()) {
+      if (!source.has(property.getKey())) {
+        patch.add(
+          operation(
+            "add",
+            path + "/" + escape(property.getKey()),
+            property.getValue()
+          )
+        );
+      }
+    }
+  }
+
+  private static void diffArrays(
+    String path,
+    JsonNode source,
+    JsonNode target,
+    ArrayNode patch
+  ) {
+    int common = Math.min(source.size(), target.size());
+    for (int i = 0; i < common; i++) {
+      diff(path + "/" + i, source.get(i), target.get(i), patch);
+    }
+    for (int i = common; i < target.size(); i++) {
+      patch.add(operation("add", path + "/" + i, target.get(i)));
+    }
+    for (int i = source.size() - 1; i >= common; i--) {
+      patch.add(operation("remove", path + "/" + i, null));
+    }
+  }
+
+  private static ObjectNode operation(
+    String op,
+    String path,
+    @Nullable JsonNode value
+  ) {
+    ObjectNode operation = JsonNodeFactory.instance.objectNode();
+    operation.put("op", op);
+    operation.put("path", path);
+    if (value != null) {
+      operation.set("value", value);
+    }
+    return operation;
+  }
+
+  // escaping of JSON Pointer (RFC 6901)
+  private static String escape(String propertyName) {
+    return propertyName.replace("~", "~0").replace("/", "~1");
+  }
+}
@@ -0,0 +1,80 @@
+package net.czedik.hermann.tdt;
+
+import org.jspecify.annotations.Nullable;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+/**
+ * Encoding of the messages exchanged with a client, negotiated via the
+ * WebSocket subprotocol. Clients which do not request a subprotocol use JSON.
+ * <p>
+ * The subprotocols with the suffix {@value #DELTA_SUFFIX} additionally select
+ * the delta protocol for player states (see {@link Client}).
+ */
+public enum MessageEncoding {
+  /**
+   * JSON in text messages
+   */
+  JSON("tdt-json", JSONHelper.objectMapper),
+
+  /**
+   * CBOR (binary JSON) in binary messages. The player states and actions are
+   * the same as with JSON.
+   */
+  CBOR("tdt-cbor", new CBORMapper());
+
+  public static final String DELTA_SUFFIX = "-delta";
+
+  private final String subprotocol;
+
+  private final ObjectMapper objectMapper;
+
+  MessageEncoding(String subprotocol, ObjectMapper objectMapper) {
+    this.subprotocol = subprotocol;
+    this.objectMapper = objectMapper;
+  }
+
+  public String getSubprotocol() {
+    return subprotocol;
+  }
+
+  public ObjectMapper getObjectMapper() {
+    return objectMapper;
+  }
+
+  /**
+   * @return the given message in this encoding
+   */
+  public WebSocketMessage<?> toMessage(JsonNode message) {
+    return switch (this) {
+      case JSON -> new TextMessage(objectMapper.writeValueAsString(message));
+      case CBOR -> new BinaryMessage(objectMapper.writeValueAsBytes(message));
+    };
+  }
+
+  /**
+   * @param subprotocol the subprotocol accepted for the connection (or null)
+   */
+  public static MessageEncoding forSubprotocol(@Nullable String subprotocol) {
+    for (MessageEncoding encoding : values()) {
+      if (
+        encoding.subprotocol.equals(subprotocol) ||
+        (encoding.subprotocol + DELTA_SUFFIX).equals(subprotocol)
+      ) {
+        return encoding;
+      }
+    }
+    return JSON;
+  }
+
+  /**
+   * @return whether the given subprotocol selects the delta protocol
+   */
+  public static boolean isDeltaSubprotocol(@Nullable String subprotocol) {
+    return subprotocol != null && subprotocol.endsWith(DELTA_SUFFIX);
+  }
+}
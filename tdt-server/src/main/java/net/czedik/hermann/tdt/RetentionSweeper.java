@@ -0,0 +1,225 @@
+package net.czedik.hermann.tdt;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically removes games which have not been changed for a long time,
+ * with a max. age per state: e.g. games which have been created, but never
+ * started (abandoned), or old finished games.
+ * <p>
+ * Expired games are deleted, except finished games, which may be archived
+ * instead (see {@link GameStore#archive(String)}), if they have not been
+ * archived yet. The candidates are taken from the {@link GameCatalog}, and
+ * each game is removed via {@link GameManager#runIfUnused}, so games which are
+ * in use are never removed. Games are removed one at a time, at a limited
+ * rate, so that the sweeper does not compete with the games being played for
+ * the disk.
+ * <p>
+ * Finished games without stored stories (see {@link Game#STORIES_FILENAME})
+ * cannot be archived: they are skipped, and counted in a gauge.
+ */
+@Component
+public class RetentionSweeper {
+
+  private static final Logger log = LoggerFactory.getLogger(
+    RetentionSweeper.class
+  );
+
+  /**
+   * What happens to expired finished games.
+   */
+  public enum FinishedGameAction {
+    ARCHIVE,
+    DELETE,
+  }
+
+  private final GameManager gameManager;
+
+  private final GameStore gameStore;
+
+  private final GameCatalog catalog;
+
+  // max. age per state (states without an entry are kept forever)
+  private final Map<GameState.State, Long> maxAgeMillis = new EnumMap<>(
+    GameState.State.class
+  );
+
+  private final FinishedGameAction finishedGameAction;
+
+  private final long pauseMillis;
+
+  // expired finished games which could not be archived in the last sweep
+  private final AtomicInteger unarchivableGames = new AtomicInteger(0);
+
+  // null: disabled
+  private final @Nullable ScheduledExecutorService sweeper;
+
+  /**
+   * @param maxAgeWaitingMillis  max. age of games which have not been started
+   *                             (0: keep forever)
+   * @param maxAgeStartedMillis  max. age of games which have not been
+   *                             finished (0: keep forever)
+   * @param maxAgeFinishedMillis max. age of finished games (0: keep forever)
+   * @param maxGamesPerSecond    max. number of games removed per second
+   */
+  public RetentionSweeper(
+    @Value("${retention.enabled:true}") boolean enabled,
+    @Value("${retention.interval-millis:3600000}") long intervalMillis,
+    @Value(
+      "${retention.max-age-millis.waiting-for-players:604800000}"
+    ) long maxAgeWaitingMillis,
+    @Value(
+      "${retention.max-age-millis.started:2592000000}"
+    ) long maxAgeStartedMillis,
+    @Value("${retention.max-age-millis.finished:0}") long maxAgeFinishedMillis,
+    @Value(
+      "${retention.finished-action:ARCHIVE}"
+    ) FinishedGameAction finishedGameAction,
+    @Value("${retention.max-games-per-second:10}") int maxGamesPerSecond,
+    GameManager gameManager,
+    GameStore gameStore,
+    GameCatalog catalog,
+    GameMetrics metrics
+  ) {
+    this.gameManager = gameManager;
+    this.gameStore = gameStore;
+    this.catalog = catalog;
+    putMaxAge(GameState.State.WaitingForPlayers, maxAgeWaitingMillis);
+    putMaxAge(GameState.State.Started, maxAgeStartedMillis);
+    putMaxAge(GameState.State.Finished, maxAgeFinishedMillis);
+    this.finishedGameAction = finishedGameAction;
+    pauseMillis = 1000 / Math.max(1, maxGamesPerSecond);
+    metrics.registerGauge(
+      "tdt.retention.unarchivable",
+      "Expired finished games which cannot be archived (no stored stories)",
+      unarchivableGames::get
+    );
+    if (enabled && !maxAgeMillis.isEmpty()) {
+      sweeper = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("retention-sweeper").daemon().factory()
+      );
+      var _ = sweeper.scheduleWithFixedDelay(
+        this::sweep,
+        intervalMillis,
+        intervalMillis,
+        TimeUnit.MILLISECONDS
+      );
+    } else {
+      sweeper = null;
+    }
+  }
+
+  private void putMaxAge(GameState.State state, long millis) {
+    if (millis > 0) {
+      maxAgeMillis.put(state, millis);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+  }
+
+  // package-private for tests
+  void sweep() {
+    if (!catalog.getScan().isDone()) {
+      // the catalog may still contain games which do not exist anymore
+      log.info("Skipping retention sweep: catalog scan not complete");
+      return;
+    }
+    long now = System.currentTimeMillis();
+    List<GameCatalog.Entry> expired = catalog.query(entry ->
+      isExpired(entry, now)
+    );
+    int removed = 0;
+    int unarchivable = 0;
+    for (GameCatalog.Entry entry : expired) {
+      try {
+        if (archives(entry.state()) && !hasStories(entry.gameId())) {
+          unarchivable++;
+        } else if (remove(entry, now)) {
+          removed++;
+          // rate limit (games which are kept do not cost any writes)
+          Thread.sleep(pauseMillis);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (IOException | RuntimeException e) {
+        // do not let an exception cancel the periodic sweep
+        log.error("Error removing expired game {}", entry.gameId(), e);
+      }
+    }
+    unarchivableGames.set(unarchivable);
+    log.info(
+      "Retention sweep: removed {} of {} expired games",
+      removed,
+      expired.size()
+    );
+    if (unarchivable > 0) {
+      log.warn(
+        "Retention sweep: {} finished games cannot be archived without stories",
+        unarchivable
+      );
+    }
+  }
+
+  // the stories of games which have been finished before the stories were
+  // stored are stored after the catalog scan: if that failed, the game is
+  // kept as it is
+  private boolean hasStories(String gameId) throws IOException {
+    return gameStore.exists(gameId, Game.STORIES_FILENAME);
+  }
+
+  private boolean isExpired(GameCatalog.Entry entry, long now) {
+    Long maxAge = maxAgeMillis.get(entry.state());
+    if (maxAge == null || entry.lastModifiedMillis() > now - maxAge) {
+      return false;
+    }
+    // archived games do not need to be archived again
+    return (
+      !archives(entry.state()) || !gameStore.isArchived(entry.gameId())
+    );
+  }
+
+  private boolean archives(GameState.State state) {
+    return (
+      state == GameState.State.Finished &&
+      finishedGameAction == FinishedGameAction.ARCHIVE
+    );
+  }
+
+  private boolean remove(GameCatalog.Entry entry, long now)
+    throws IOException {
+    String gameId = entry.gameId();
+    long cutoffMillis = now - maxAgeMillis.getOrDefault(entry.state(), 0L);
+    boolean archive = archives(entry.state());
+    boolean removed = gameManager.runIfUnused(gameId, () -> {
+      // the catalog may be behind the files
+      GameStore.FileStats stats = gameStore.getFileStats(gameId);
+      if (stats == null || stats.lastModifiedMillis() > cutoffMillis) {
+        return false;
+      }
+      return archive ? gameStore.archive(gameId) : gameStore.delete(gameId);
+    });
+    if (removed && !archive) {
+      catalog.remove(gameId);
+    }
+    return removed;
+  }
+}
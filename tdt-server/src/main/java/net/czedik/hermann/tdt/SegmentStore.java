@@ -0,0 +1,413 @@
+package net.czedik.hermann.tdt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only storage of the files of finished games in a few large segment
+ * files (instead of one directory with many small files per game).
+ * <p>
+ * All files of a game are stored as one block in a segment: a table of
+ * contents (name, offset and length of every file), followed by the contents.
+ * For every segment there is an index file with one fixed-size record per
+ * block (game id, offset and length of the block, and when it has been
+ * archived), which is read into memory on startup. A block is only added to
+ * the index after it has been written completely, so a crash never leaves a
+ * torn block visible. Removed games get a tombstone record in the index
+ * (their block stays in the segment).
+ * <p>
+ * Reads are served from read-only memory mappings of the segments, without
+ * copying.
+ */
+public class SegmentStore implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(
+    SegmentStore.class
+  );
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  private static final String INDEX_SUFFIX = ".idx";
+
+  private static final int BLOCK_MAGIC = 0x54445447; // "TDTG"
+
+  private static final int GAME_ID_LENGTH = 5;
+
+  // game id, offset and length of the block, and when it has been archived
+  private static final int INDEX_RECORD_SIZE = GAME_ID_LENGTH + 8 + 4 + 8;
+
+  // offset of a tombstone record
+  private static final long REMOVED = -1;
+
+  private record Location(
+    int segment,
+    long offset,
+    int length,
+    long archivedMillis
+  ) {}
+
+  private final Path segmentsDir;
+
+  // max. size of a segment (which is mapped as a whole, so it must be < 2 GB)
+  private final long maxSegmentBytes;
+
+  private final Map<String, Location> index = new ConcurrentHashMap<>();
+
+  // read-only mappings of the segments (key: segment number)
+  private final Map<Integer, MappedByteBuffer> mappings =
+    new ConcurrentHashMap<>();
+
+  // guarded by this
+  private int activeSegment;
+
+  // guarded by this
+  private @Nullable FileChannel activeSegmentChannel;
+
+  // guarded by this
+  private @Nullable FileChannel activeIndexChannel;
+
+  public SegmentStore(Path segmentsDir, long maxSegmentBytes)
+    throws IOException {
+    this.segmentsDir = Objects.requireNonNull(segmentsDir);
+    this.maxSegmentBytes = Math.min(maxSegmentBytes, Integer.MAX_VALUE);
+    Files.createDirectories(segmentsDir);
+    activeSegment = loadIndex();
+    log.info(
+      "Loaded index of {} archived games from {}",
+      index.size(),
+      segmentsDir
+    );
+  }
+
+  // returns the number of the last segment (0 if there are none)
+  private int loadIndex() throws IOException {
+    List<Path> indexFiles = new ArrayList<>();
+    try (
+      DirectoryStream<Path> files = Files.newDirectoryStream(
+        segmentsDir,
+        "*" + INDEX_SUFFIX
+      )
+    ) {
+      files.forEach(indexFiles::add);
+    }
+    // in order, so that later records (e.g. tombstones) replace earlier ones
+    indexFiles.sort(null);
+    int lastSegment = 0;
+    for (Path indexFile : indexFiles) {
+      String fileName = indexFile.getFileName().toString();
+      int segment = Integer.parseInt(
+        fileName.substring(0, fileName.length() - INDEX_SUFFIX.length())
+      );
+      lastSegment = Math.max(lastSegment, segment);
+      ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+      // a torn last record (crash while appending) is ignored
+      while (records.remaining() >= INDEX_RECORD_SIZE) {
+        byte[] gameIdBytes = new byte[GAME_ID_LENGTH];
+        records.get(gameIdBytes);
+        String gameId = new String(gameIdBytes, StandardCharsets.US_ASCII);
+        long offset = records.getLong();
+        int length = records.getInt();
+        long archivedMillis = records.getLong();
+        if (offset == REMOVED) {
+          index.remove(gameId);
+        } else {
+          index.put(
+            gameId,
+            new Location(segment, offset, length, archivedMillis)
+          );
+        }
+      }
+    }
+    return lastSegment;
+  }
+
+  public boolean contains(String gameId) {
+    return index.containsKey(gameId);
+  }
+
+  public void forEachGameId(Consumer<String> action) {
+    index.keySet().forEach(action);
+  }
+
+  /**
+   * @return size of the block of the game, and when it has been archived, or
+   * null if the game is not stored here
+   */
+  public GameStore.@Nullable FileStats getFileStats(String gameId) {
+    Location location = index.get(gameId);
+    if (location == null) {
+      return null;
+    }
+    return new GameStore.FileStats(
+      location.length(),
+      location.archivedMillis()
+    );
+  }
+
+  /**
+   * @return the file of the given game (a read-only slice of the mapped
+   * segment), or null if it is not stored here
+   */
+  public @Nullable ByteBuffer read(String gameId, String name)
+    throws IOException {
+    Location location = index.get(gameId);
+    if (location == null) {
+      return null;
+    }
+    ByteBuffer block = getMapping(
+      location.segment(),
+      location.offset() + location.length()
+    ).slice((int) location.offset(), location.length());
+    if (block.getInt() != BLOCK_MAGIC) {
+      throw new IOException(
+        "Corrupt block of game " +
+        gameId +
+        " in segment " +
+        location.segment()
+      );
+    }
+    int entries = block.getInt();
+    byte[] wantedName = name.getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < entries; i++) {
+      byte[] entryName = new byte[block.getShort()];
+      block.get(entryName);
+      int offset = block.getInt();
+      int length = block.getInt();
+      if (Arrays.equals(entryName, wantedName)) {
+        return block.slice(offset, length).asReadOnlyBuffer();
+      }
+    }
+    return null;
+  }
+
+  private MappedByteBuffer getMapping(int segment, long minSize)
+    throws IOException {
+    MappedByteBuffer mapping = mappings.get(segment);
+    if (mapping != null && mapping.capacity() >= minSize) {
+      return mapping;
+    }
+    synchronized (mappings) {
+      mapping = mappings.get(segment);
+      if (mapping == null || mapping.capacity() < minSize) {
+        // (re-)map: the active segment grows
+        try (FileChannel channel = FileChannel.open(segmentFile(segment))) {
+          mapping = channel.map(
+            FileChannel.MapMode.READ_ONLY,
+            0,
+            channel.size()
+          );
+        }
+        mappings.put(segment, mapping);
+      }
+      return mapping;
+    }
+  }
+
+  /**
+   * Appends the given files of a game as one block. If the game is already
+   * stored, nothing is appended.
+   */
+  public synchronized void append(String gameId, List<Path> files)
+    throws IOException {
+    if (gameId.length() != GAME_ID_LENGTH) {
+      throw new IllegalArgumentException("Invalid gameId: " + gameId);
+    }
+    if (contains(gameId)) {
+      return;
+    }
+
+    // table of contents: offsets are relative to the start of the block
+    List<byte[]> names = new ArrayList<>(files.size());
+    int headerSize = 8;
+    for (Path file : files) {
+      byte[] name = file.getFileName().toString().getBytes(
+        StandardCharsets.UTF_8
+      );
+      names.add(name);
+      headerSize += 2 + name.length + 4 + 4;
+    }
+    ByteBuffer header = ByteBuffer.allocate(headerSize);
+    header.putInt(BLOCK_MAGIC).putInt(files.size());
+    long blockLength = headerSize;
+    for (int i = 0; i < files.size(); i++) {
+      long size = Files.size(files.get(i));
+      header
+        .putShort((short) names.get(i).length)
+        .put(names.get(i))
+        .putInt((int) blockLength)
+        .putInt((int) size);
+      blockLength += size;
+    }
+    header.flip();
+    if (blockLength > maxSegmentBytes) {
+      throw new IOException(
+        "Game " + gameId + " is too large for a segment: " + blockLength
+      );
+    }
+
+    FileChannel segmentChannel = getActiveSegmentChannel(blockLength);
+    long blockOffset = segmentChannel.size();
+    long position = blockOffset;
+    while (header.hasRemaining()) {
+      position += segmentChannel.write(header, position);
+    }
+    for (Path file : files) {
+      try (FileChannel in = FileChannel.open(file)) {
+        long size = in.size();
+        long transferred = 0;
+        while (transferred < size) {
+          long n = segmentChannel.transferFrom(
+            in,
+            position + transferred,
+            size - transferred
+          );
+          if (n == 0) {
+            throw new IOException("File changed while archiving: " + file);
+          }
+          transferred += n;
+        }
+        position += size;
+      }
+    }
+    segmentChannel.force(false);
+
+    long archivedMillis = System.currentTimeMillis();
+    appendIndexRecord(gameId, blockOffset, (int) blockLength, archivedMillis);
+    index.put(
+      gameId,
+      new Location(
+        activeSegment,
+        blockOffset,
+        (int) blockLength,
+        archivedMillis
+      )
+    );
+  }
+
+  /**
+   * Removes a game. Its block stays in the segment, but cannot be read
+   * anymore.
+   *
+   * @return false if the game is not stored here
+   */
+  public synchronized boolean remove(String gameId) throws IOException {
+    if (!contains(gameId)) {
+      return false;
+    }
+    // opens the index of the active segment, if needed
+    getActiveSegmentChannel(0);
+    appendIndexRecord(gameId, REMOVED, 0, 0);
+    index.remove(gameId);
+    return true;
+  }
+
+  // note: the caller must hold the lock
+  private void appendIndexRecord(
+    String gameId,
+    long offset,
+    int length,
+    long archivedMillis
+  ) throws IOException {
+    ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE)
+      .put(gameId.getBytes(StandardCharsets.US_ASCII))
+      .putLong(offset)
+      .putInt(length)
+      .putLong(archivedMillis)
+      .flip();
+    FileChannel indexChannel = Objects.requireNonNull(activeIndexChannel);
+    while (record.hasRemaining()) {
+      indexChannel.write(record);
+    }
+    indexChannel.force(false);
+  }
+
+  // note: the caller must hold the lock
+  private FileChannel getActiveSegmentChannel(long blockLength)
+    throws IOException {
+    FileChannel channel = activeSegmentChannel;
+    if (channel == null && activeSegment > 0) {
+      channel = openActiveSegment();
+    }
+    if (channel == null || channel.size() + blockLength > maxSegmentBytes) {
+      // start a new segment (the old one is never written again)
+      closeActiveSegment();
+      activeSegment++;
+      channel = openActiveSegment();
+    }
+    return channel;
+  }
+
+  // note: the caller must hold the lock
+  private FileChannel openActiveSegment() throws IOException {
+    activeSegmentChannel = FileChannel.open(
+      segmentFile(activeSegment),
+      StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE
+    );
+    Path indexFile = segmentsDir.resolve(
+      segmentName(activeSegment) + INDEX_SUFFIX
+    );
+    activeIndexChannel = FileChannel.open(
+      indexFile,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE,
+      StandardOpenOption.APPEND
+    );
+    // a torn last record (crash while appending) would shift all records
+    // appended after it
+    long size = activeIndexChannel.size();
+    long intactSize = (size / INDEX_RECORD_SIZE) * INDEX_RECORD_SIZE;
+    if (intactSize < size) {
+      log.warn(
+        "Truncating torn last record of index {} ({} bytes)",
+        indexFile,
+        size - intactSize
+      );
+      activeIndexChannel.truncate(intactSize);
+    }
+    return activeSegmentChannel;
+  }
+
+  // note: the caller must hold the lock
+  private void closeActiveSegment() throws IOException {
+    if (activeSegmentChannel != null) {
+      activeSegmentChannel.close();
+      activeSegmentChannel = null;
+    }
+    if (activeIndexChannel != null) {
+      activeIndexChannel.close();
+      activeIndexChannel = null;
+    }
+  }
+
+  private Path segmentFile(int segment) {
+    return segmentsDir.resolve(segmentName(segment) + SEGMENT_SUFFIX);
+  }
+
+  private static String segmentName(int segment) {
+    return String.format("%06d", segment);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closeActiveSegment();
+  }
+}
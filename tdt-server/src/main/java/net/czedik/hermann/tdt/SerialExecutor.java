@@ -0,0 +1,62 @@
+package net.czedik.hermann.tdt;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mailbox which runs its tasks one after the other (in submission order) on
+ * the underlying executor. Submitting never blocks: the task is queued and
+ * processed by whichever thread is currently draining the mailbox.
+ */
+public class SerialExecutor implements Executor {
+
+  private static final Logger log = LoggerFactory.getLogger(
+    SerialExecutor.class
+  );
+
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+  private final AtomicBoolean draining = new AtomicBoolean(false);
+
+  private final Executor executor;
+
+  public SerialExecutor(Executor executor) {
+    this.executor = Objects.requireNonNull(executor);
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    tasks.add(Objects.requireNonNull(task));
+    scheduleDrain();
+  }
+
+  private void scheduleDrain() {
+    if (draining.compareAndSet(false, true)) {
+      executor.execute(this::drain);
+    }
+  }
+
+  private void drain() {
+    try {
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+        try {
+          task.run();
+        } catch (Throwable t) {
+          log.error("Task failed", t);
+        }
+      }
+    } finally {
+      draining.set(false);
+      // a task might have been added after the last poll
+      if (!tasks.isEmpty()) {
+        scheduleDrain();
+      }
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package net.czedik.hermann.tdt;
+
+import java.util.Objects;
+import net.czedik.hermann.tdt.playerstate.PlayerState;
+import org.jspecify.annotations.Nullable;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import tools.jackson.databind.JsonNode;
+
+/**
+ * A player state which is serialized at most once per encoding, so that the
+ * (immutable) serialized form can be shared by all clients which receive the
+ * same state.
+ */
+public final class SerializedPlayerState {
+
+  private final PlayerState state;
+
+  // serialized lazily (a concurrent double serialization would be harmless)
+  private volatile @Nullable TextMessage textMessage;
+
+  private volatile byte @Nullable [] cbor;
+
+  private volatile @Nullable JsonNode tree;
+
+  private SerializedPlayerState(PlayerState state) {
+    this.state = Objects.requireNonNull(state);
+  }
+
+  public static SerializedPlayerState of(PlayerState state) {
+    return new SerializedPlayerState(state);
+  }
+
+  public PlayerState getState() {
+    return state;
+  }
+
+  public String getJson() {
+    return getTextMessage().getPayload();
+  }
+
+  public TextMessage getTextMessage() {
+    TextMessage message = textMessage;
+    if (message == null) {
+      message = new TextMessage(JSONHelper.objectToJsonString(state));
+      textMessage = message;
+    }
+    return message;
+  }
+
+  /**
+   * @return the state as a JSON tree (for computing differences): must not be
+   * modified
+   */
+  public JsonNode getTree() {
+    JsonNode node = tree;
+    if (node == null) {
+      node = JSONHelper.objectMapper.valueToTree(state);
+      tree = node;
+    }
+    return node;
+  }
+
+  private byte[] getCbor() {
+    byte[] bytes = cbor;
+    if (bytes == null) {
+      bytes = MessageEncoding.CBOR.getObjectMapper().writeValueAsBytes(state);
+      cbor = bytes;
+    }
+    return bytes;
+  }
+
+  /**
+   * @return message for sending the state in the given encoding (note: binary
+   * messages must not be shared, because their buffer has a position)
+   */
+  public WebSocketMessage<?> getMessage(MessageEncoding encoding) {
+    return switch (encoding) {
+      case JSON -> getTextMessage();
+      case CBOR -> new BinaryMessage(getCbor());
+    };
+  }
+
+  /**
+   * @return approximate size of the message in the given encoding (in bytes)
+   */
+  public int getPayloadSize(MessageEncoding encoding) {
+    return switch (encoding) {
+      case JSON -> getJson().length();
+      case CBOR -> getCbor().length;
+    };
+  }
+}
@@ -0,0 +1,96 @@
+package net.czedik.hermann.tdt;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import net.czedik.hermann.tdt.playerstate.PlayerState;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The spectators of a game: read-only clients, which all get the same state.
+ * <p>
+ * The game publishes the spectator state after every change (while holding
+ * its lock). The state is serialized once, and sent to all spectators in a
+ * separate broadcast stage, so that the number of spectators does not add to
+ * the time the game is locked. If the game changes faster than the states
+ * can be broadcast, intermediate states are skipped (every state is
+ * complete, so only the newest one matters).
+ */
+public class Spectators {
+
+  // shared by all games: the broadcasts of a game run one after the other (see broadcaster)
+  private static final Executor broadcastExecutor =
+    Executors.newThreadPerTaskExecutor(
+      Thread.ofVirtual().name("spectator-broadcast-", 0).factory()
+    );
+
+  private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+
+  private final SerialExecutor broadcaster = new SerialExecutor(
+    broadcastExecutor
+  );
+
+  // newest published state, which has not been broadcast yet
+  private final AtomicReference<@Nullable PlayerState> pendingState =
+    new AtomicReference<>();
+
+  // only accessed by the broadcaster
+  private @Nullable SerializedPlayerState broadcastState;
+
+  /**
+   * Adds a spectator. It gets the last broadcast state (if any), and all
+   * states published from now on.
+   */
+  public void add(Client client) {
+    Objects.requireNonNull(client);
+    clients.add(client);
+    broadcaster.execute(() -> {
+      // runs after a broadcast which might be in progress, so the client
+      // never gets an older state after this one
+      SerializedPlayerState state = broadcastState;
+      if (state != null) {
+        client.send(state);
+      }
+    });
+  }
+
+  /**
+   * @return whether the client has been a spectator
+   */
+  public boolean remove(Client client) {
+    return clients.remove(client);
+  }
+
+  public boolean isEmpty() {
+    return clients.isEmpty();
+  }
+
+  public int size() {
+    return clients.size();
+  }
+
+  /**
+   * Publishes a new state for all spectators. Does not block: the state gets
+   * serialized and sent by the broadcast stage.
+   */
+  public void publish(PlayerState state) {
+    if (pendingState.getAndSet(Objects.requireNonNull(state)) == null) {
+      broadcaster.execute(this::broadcastPendingState);
+    }
+  }
+
+  private void broadcastPendingState() {
+    PlayerState state = pendingState.getAndSet(null);
+    if (state == null) {
+      return;
+    }
+    SerializedPlayerState serializedState = SerializedPlayerState.of(state);
+    broadcastState = serializedState;
+    for (Client client : clients) {
+      client.send(serializedState);
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package net.czedik.hermann.tdt;
+
+import jakarta.annotation.PreDestroy;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generates downscaled variants (thumbnails) of drawings in the background,
+ * on a small pool of threads.
+ * <p>
+ * The variants are stored next to the original drawing (see
+ * {@link #variantName(String, int)}). Until a variant has been generated, the
+ * original gets served instead. So if the queue is full, drawings are simply
+ * not downscaled.
+ */
+@Component
+public class ThumbnailGenerator {
+
+  private static final Logger log = LoggerFactory.getLogger(
+    ThumbnailGenerator.class
+  );
+
+  // max. width * height of a drawing which gets downscaled: decoding needs
+  // 4 bytes per pixel, whatever the (compressed) size of the drawing
+  static final long MAX_PIXELS = 4096L * 4096L;
+
+  // ascending
+  private final int[] widths;
+
+  private final ImageCache imageCache;
+
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * @param widths        widths of the variants (empty: no variants)
+   * @param threads       number of threads for downscaling
+   * @param queueCapacity max. number of drawings waiting to be downscaled
+   */
+  public ThumbnailGenerator(
+    @Value("${thumbnails.widths:256,512}") int[] widths,
+    @Value("${thumbnails.threads:1}") int threads,
+    @Value("${thumbnails.queue-capacity:256}") int queueCapacity,
+    ImageCache imageCache
+  ) {
+    this.widths = widths.clone();
+    Arrays.sort(this.widths);
+    this.imageCache = imageCache;
+    executor = new ThreadPoolExecutor(
+      threads,
+      threads,
+      0L,
+      TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(queueCapacity),
+      (task, e) -> log.warn("Thumbnail queue full: skipping drawing")
+    );
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return name of the variant with the given width of an image
+   */
+  public static String variantName(String imageName, int width) {
+    String baseName = imageName.endsWith(".png")
+      ? imageName.substring(0, imageName.length() - ".png".length())
+      : imageName;
+    return baseName + "_" + width + ".png";
+  }
+
+  /**
+   * @return the width of the smallest variant which is at least as wide as
+   * requested, or null if the original should be used
+   */
+  public @Nullable Integer selectWidth(int requestedWidth) {
+    for (int width : widths) {
+      if (width >= requestedWidth) {
+        return width;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Queues the generation of the variants of a drawing, which has been
+   * written to the given path.
+   */
+  public void submit(Path imagePath) {
+    if (widths.length == 0) {
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        writeVariants(imagePath);
+      } catch (IOException | RuntimeException e) {
+        log.error("Error generating thumbnails of {}", imagePath, e);
+      }
+    });
+  }
+
+  // package-private for tests
+  void writeVariants(Path imagePath) throws IOException {
+    // the drawing has just been written, so this is read from the page cache
+    byte[] image = Files.readAllBytes(imagePath);
+    BufferedImage original = readImage(imagePath, image);
+    if (original == null) {
+      return;
+    }
+    String imageName = imagePath.getFileName().toString();
+    for (int width : widths) {
+      if (width >= original.getWidth()) {
+        // no upscaling: the original is served instead
+        break;
+      }
+      byte[] variant = toPng(scaleToWidth(original, width));
+      String variantName = variantName(imageName, width);
+      // atomic, so that a partially written variant never gets served
+      Path variantPath = imagePath.resolveSibling(variantName);
+      Path tmpPath = imagePath.resolveSibling(variantName + ".tmp");
+      Files.write(tmpPath, variant);
+      Files.move(tmpPath, variantPath, StandardCopyOption.ATOMIC_MOVE);
+      imageCache.put(variantName, variant);
+    }
+  }
+
+  /**
+   * @return the decoded image, or null if it is not an image or too large
+   * to decode
+   */
+  private static @Nullable BufferedImage readImage(
+    Path imagePath,
+    byte[] image
+  ) throws IOException {
+    try (
+      ImageInputStream in = ImageIO.createImageInputStream(
+        new ByteArrayInputStream(image)
+      )
+    ) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        log.warn("Cannot generate thumbnails of {}: not an image", imagePath);
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        // from the header: checked before allocating the pixels
+        long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+        if (pixels > MAX_PIXELS) {
+          log.warn(
+            "Cannot generate thumbnails of {}: too large ({} pixels)",
+            imagePath,
+            pixels
+          );
+          return null;
+        }
+        return reader.read(0);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  private static BufferedImage scaleToWidth(BufferedImage image, int width) {
+    // halve the size step by step: a single bilinear step loses too much detail of thin lines
+    BufferedImage scaled = image;
+    while (scaled.getWidth() / 2 >= width) {
+      scaled = scale(scaled, scaled.getWidth() / 2);
+    }
+    return scaled.getWidth() == width ? scaled : scale(scaled, width);
+  }
+
+  private static BufferedImage scale(BufferedImage image, int width) {
+    int height = Math.max(
+      1,
+      Math.round((float) image.getHeight() * width / image.getWidth())
+    );
+    BufferedImage scaled = new BufferedImage(
+      width,
+      height,
+      BufferedImage.TYPE_INT_ARGB
+    );
+    Graphics2D g = scaled.createGraphics();
+    try {
+      g.setRenderingHint(
+        RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.VALUE_INTERPOLATION_BILINEAR
+      );
+      g.setRenderingHint(
+        RenderingHints.KEY_RENDERING,
+        RenderingHints.VALUE_RENDER_QUALITY
+      );
+      g.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      g.dispose();
+    }
+    return scaled;
+  }
+
+  private static byte[] toPng(BufferedImage image) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return out.toByteArray();
+  }
+}
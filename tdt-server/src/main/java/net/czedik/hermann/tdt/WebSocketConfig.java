@@ -1,6 +1,7 @@
 package net.czedik.hermann.tdt;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -15,9 +16,24 @@ public class WebSocketConfig implements WebSocketConfigurer {
   private static final int ONE_MB = 1 * 1024 * 1024;
   private static final int FIVE_MB = 5 * 1024 * 1024;
 
+  // messages are received in parts of this size (see WebSocketHandler)
+  private static final int PART_SIZE = 64 * 1024;
+
   @Autowired
   private GameManager gameManager;
 
+  @Autowired
+  private GameMetrics metrics;
+
+  @Value("${websocket.send.buffer-size-limit:1048576}")
+  private int sendBufferSizeLimit;
+
+  @Value("${websocket.send.time-limit-millis:10000}")
+  private long sendTimeLimitMillis;
+
+  @Value("${websocket.send.overflow-strategy:DROP_SUPERSEDED}")
+  private Client.OverflowStrategy sendOverflowStrategy;
+
   @Override
   public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
     registry
@@ -28,7 +44,16 @@ public class WebSocketConfig implements WebSocketConfigurer {
 
   @Bean
   public WebSocketHandler myHandler() {
-    return new WebSocketHandler(gameManager);
+    return new WebSocketHandler(
+      gameManager,
+      new Client.SendSettings(
+        sendBufferSizeLimit,
+        sendTimeLimitMillis,
+        sendOverflowStrategy
+      ),
+      metrics,
+      FIVE_MB
+    );
   }
 
   @Bean
@@ -36,7 +61,7 @@ public class WebSocketConfig implements WebSocketConfigurer {
     ServletServerContainerFactoryBean container =
       new ServletServerContainerFactoryBean();
     container.setMaxTextMessageBufferSize(ONE_MB);
-    container.setMaxBinaryMessageBufferSize(FIVE_MB);
+    container.setMaxBinaryMessageBufferSize(PART_SIZE);
     return container;
   }
 }
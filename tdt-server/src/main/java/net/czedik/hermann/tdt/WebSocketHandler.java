@@ -1,27 +1,39 @@
 package net.czedik.hermann.tdt;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import net.czedik.hermann.tdt.actions.AccessAction;
 import net.czedik.hermann.tdt.actions.JoinAction;
+import net.czedik.hermann.tdt.actions.SpectateAction;
 import net.czedik.hermann.tdt.actions.TypeAction;
 import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 import tools.jackson.core.JacksonException;
 import tools.jackson.databind.JsonNode;
 
-public class WebSocketHandler extends AbstractWebSocketHandler {
+public class WebSocketHandler
+  extends AbstractWebSocketHandler
+  implements SubProtocolCapable
+{
 
   private static final Logger log = LoggerFactory.getLogger(
     WebSocketHandler.class
@@ -29,16 +41,68 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
 
   private static final long KEEP_CLIENTS_ALIVE_INTERVAL_SECONDS = 15;
 
+  // max. size of a message containing an action
+  private static final int MAX_ACTION_MESSAGE_SIZE = 1024 * 1024;
+
+  private static final byte[] PNG_SIGNATURE = {
+    (byte) 0x89,
+    'P',
+    'N',
+    'G',
+    '\r',
+    '\n',
+    0x1a,
+    '\n',
+  };
+
   private final Map<WebSocketSession, Client> clients =
     new ConcurrentHashMap<>();
 
   private final GameManager gameManager;
 
+  private final Client.SendSettings sendSettings;
+
+  private final GameMetrics metrics;
+
+  private final long maxDrawingBytes;
+
+  // messages are received in parts (see supportsPartialMessages()): the
+  // actions are assembled in memory, the drawings are streamed to files
+  private final Map<WebSocketSession, ByteArrayOutputStream> partialActions =
+    new ConcurrentHashMap<>();
+
+  private final Map<WebSocketSession, DrawingUpload> drawingUploads =
+    new ConcurrentHashMap<>();
+
+  // first parts of binary messages, which are too short to tell drawings (by
+  // their PNG signature) from actions
+  private final Map<WebSocketSession, ByteBuffer> binaryMessageStarts =
+    new ConcurrentHashMap<>();
+
   private final ScheduledExecutorService executorService =
     Executors.newSingleThreadScheduledExecutor();
 
-  public WebSocketHandler(GameManager gameManager) {
+  // every client drains its outbound queue on its own (virtual) thread
+  private final ExecutorService clientSenderExecutor =
+    Executors.newThreadPerTaskExecutor(
+      Thread.ofVirtual().name("client-sender-", 0).factory()
+    );
+
+  public WebSocketHandler(
+    GameManager gameManager,
+    Client.SendSettings sendSettings,
+    GameMetrics metrics,
+    long maxDrawingBytes
+  ) {
     this.gameManager = gameManager;
+    this.sendSettings = sendSettings;
+    this.metrics = metrics;
+    this.maxDrawingBytes = maxDrawingBytes;
+    metrics.registerGauge(
+      "tdt.clients",
+      "Number of connected clients",
+      clients::size
+    );
 
     var _ = executorService.scheduleWithFixedDelay(
       () -> {
@@ -66,7 +130,10 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
 
   @Override
   public void afterConnectionEstablished(WebSocketSession session) {
-    clients.put(session, new Client(session));
+    clients.put(
+      session,
+      new Client(session, sendSettings, clientSenderExecutor, metrics)
+    );
     log.info(
       "Connection {} from: {} (total clients: {})",
       session.getId(),
@@ -81,6 +148,13 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
     CloseStatus status
   ) {
     Client client = clients.remove(session);
+    client.discardPendingMessages();
+    partialActions.remove(session);
+    binaryMessageStarts.remove(session);
+    DrawingUpload drawingUpload = drawingUploads.remove(session);
+    if (drawingUpload != null) {
+      drawingUpload.abort();
+    }
     log.info(
       "Closed connection {} ({}) with status {} (total clients: {})",
       session.getId(),
@@ -91,13 +165,66 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
     gameManager.clientDisconnected(client);
   }
 
+  /**
+   * Large messages (in particular drawings) are received in parts, as they
+   * arrive, instead of being buffered as a whole by the container.
+   */
+  @Override
+  public boolean supportsPartialMessages() {
+    return true;
+  }
+
   @Override
   public void handleTextMessage(WebSocketSession session, TextMessage message)
-    throws JacksonException {
+    throws IOException {
     Client client = Objects.requireNonNull(clients.get(session));
-    String payload = message.getPayload();
+    String payload;
+    if (message.isLast() && !partialActions.containsKey(session)) {
+      payload = message.getPayload();
+    } else {
+      byte[] action = assembleAction(
+        session,
+        message.asBytes(),
+        message.isLast()
+      );
+      if (action == null) {
+        return;
+      }
+      payload = new String(action, StandardCharsets.UTF_8);
+    }
     log.info("Client {} sent message: {}", client.getId(), payload);
-    JsonNode actionMessage = JSONHelper.stringToJsonNode(payload);
+    handleAction(client, JSONHelper.stringToJsonNode(payload));
+  }
+
+  /**
+   * Collects the parts of an action message.
+   *
+   * @return the whole message once the last part has arrived, otherwise null
+   */
+  private byte @Nullable [] assembleAction(
+    WebSocketSession session,
+    byte[] part,
+    boolean isLast
+  ) throws IOException {
+    ByteArrayOutputStream action = partialActions.computeIfAbsent(
+      session,
+      s -> new ByteArrayOutputStream()
+    );
+    if (action.size() + part.length > MAX_ACTION_MESSAGE_SIZE) {
+      partialActions.remove(session);
+      session.close(CloseStatus.TOO_BIG_TO_PROCESS);
+      return null;
+    }
+    action.write(part);
+    if (!isLast) {
+      return null;
+    }
+    partialActions.remove(session);
+    return action.toByteArray();
+  }
+
+  private void handleAction(Client client, JsonNode actionMessage)
+    throws JacksonException {
     String action = actionMessage.get("action").asString();
     JsonNode content = actionMessage.get("content");
     if ("access".equals(action)) {
@@ -112,6 +239,12 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
         JoinAction.class
       );
       gameManager.handleJoinAction(client, joinAction);
+    } else if ("spectate".equals(action)) {
+      SpectateAction spectateAction = JSONHelper.objectMapper.treeToValue(
+        content,
+        SpectateAction.class
+      );
+      gameManager.handleSpectateAction(client, spectateAction);
     } else if ("start".equals(action)) {
       gameManager.handleStartAction(client);
     } else if ("type".equals(action)) {
@@ -120,6 +253,10 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
         TypeAction.class
       );
       gameManager.handleTypeAction(client, typeAction);
+    } else if ("ack".equals(action)) {
+      client.acknowledge(content.get("version").asLong());
+    } else if ("resync".equals(action)) {
+      client.requestSnapshot();
     } else {
       throw new IllegalArgumentException("Unknown action: " + action);
     }
@@ -129,15 +266,133 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
   protected void handleBinaryMessage(
     WebSocketSession session,
     BinaryMessage message
-  ) {
+  ) throws IOException {
     Client client = Objects.requireNonNull(clients.get(session));
+    ByteBuffer payload = message.getPayload();
+    DrawingUpload drawingUpload = drawingUploads.get(session);
+    if (drawingUpload == null) {
+      boolean firstPart = !partialActions.containsKey(session);
+      if (firstPart) {
+        ByteBuffer messageStart = bufferMessageStart(
+          session,
+          payload,
+          message.isLast()
+        );
+        if (messageStart == null) {
+          return;
+        }
+        payload = messageStart;
+      }
+      if (
+        client.getEncoding() == MessageEncoding.CBOR &&
+        (!firstPart || !isPng(payload))
+      ) {
+        // clients using CBOR send their actions in binary messages, too
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        byte[] action = message.isLast() && firstPart
+          ? bytes
+          : assembleAction(session, bytes, message.isLast());
+        if (action != null) {
+          JsonNode actionMessage = MessageEncoding.CBOR
+            .getObjectMapper()
+            .readTree(action);
+          log.info("Client {} sent message: {}", client.getId(), actionMessage);
+          handleAction(client, actionMessage);
+        }
+        return;
+      }
+      // validated before anything gets written
+      if (!isPng(payload)) {
+        throw new IllegalArgumentException("Drawing is not a PNG image");
+      }
+      drawingUpload = gameManager.startDrawingUpload(maxDrawingBytes);
+      drawingUploads.put(session, drawingUpload);
+    }
+
+    if (!drawingUpload.append(payload)) {
+      log.warn(
+        "Drawing of client {} exceeds {} bytes",
+        client.getId(),
+        maxDrawingBytes
+      );
+      drawingUploads.remove(session);
+      drawingUpload.abort();
+      session.close(CloseStatus.TOO_BIG_TO_PROCESS);
+      return;
+    }
+    if (!message.isLast()) {
+      return;
+    }
+
+    drawingUploads.remove(session);
     log.info(
       "Received image (size: {}KB) from client {}",
-      message.getPayloadLength() / 1000,
+      drawingUpload.getSize() / 1000,
       client.getId()
     );
+    Path uploadFile = drawingUpload.finish();
+    gameManager.handleReceiveDrawing(
+      client,
+      uploadFile,
+      drawingUpload.getContentHash(),
+      drawingUpload.getSize()
+    );
+  }
 
-    gameManager.handleReceiveDrawing(client, message.getPayload());
+  /**
+   * Collects the first parts of a binary message, until they contain at least
+   * as many bytes as the PNG signature (or the message is complete).
+   *
+   * @return the start of the message, including the given part, or null if
+   * more parts are needed
+   */
+  private @Nullable ByteBuffer bufferMessageStart(
+    WebSocketSession session,
+    ByteBuffer part,
+    boolean isLast
+  ) {
+    ByteBuffer buffered = binaryMessageStarts.remove(session);
+    if (
+      buffered == null && (isLast || part.remaining() >= PNG_SIGNATURE.length)
+    ) {
+      return part;
+    }
+    ByteBuffer start = ByteBuffer.allocate(
+      (buffered == null ? 0 : buffered.remaining()) + part.remaining()
+    );
+    if (buffered != null) {
+      start.put(buffered);
+    }
+    start.put(part).flip();
+    if (!isLast && start.remaining() < PNG_SIGNATURE.length) {
+      binaryMessageStarts.put(session, start);
+      return null;
+    }
+    return start;
+  }
+
+  private static boolean isPng(ByteBuffer payload) {
+    if (payload.remaining() < PNG_SIGNATURE.length) {
+      return false;
+    }
+    for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+      if (payload.get(payload.position() + i) != PNG_SIGNATURE[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public List<String> getSubProtocols() {
+    // the order is the preference of the server, if a client requests several
+    return List.of(
+      MessageEncoding.CBOR.getSubprotocol() + MessageEncoding.DELTA_SUFFIX,
+      MessageEncoding.JSON.getSubprotocol() + MessageEncoding.DELTA_SUFFIX,
+      MessageEncoding.CBOR.getSubprotocol(),
+      MessageEncoding.JSON.getSubprotocol()
+    );
   }
 
   private static @Nullable String getHostname(WebSocketSession session) {
@@ -0,0 +1,3 @@
+package net.czedik.hermann.tdt.actions;
+
+public record SpectateAction(String gameId) {}
@@ -0,0 +1,37 @@
+package net.czedik.hermann.tdt.playerstate;
+
+import java.util.List;
+import java.util.Objects;
+import net.czedik.hermann.tdt.PlayerInfo;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * State for spectators (read-only clients, which watch a game).
+ *
+ * @param gameState         "waitingForPlayers", "started" or "finished"
+ * @param players           all players of the game
+ * @param round             current round number (1-based, 0 before the start)
+ * @param rounds            total number of rounds (0 before the start)
+ * @param waitingForPlayers players who have not finished the current round
+ * @param stories           the stories, once the game is finished (otherwise
+ *                          null)
+ */
+public record SpectatorState(
+  String gameState,
+  List<PlayerInfo> players,
+  int round,
+  int rounds,
+  List<PlayerInfo> waitingForPlayers,
+  @Nullable List<FrontendStory> stories
+) implements PlayerState {
+  public SpectatorState {
+    Objects.requireNonNull(gameState);
+    Objects.requireNonNull(players);
+    Objects.requireNonNull(waitingForPlayers);
+  }
+
+  @Override
+  public String getState() {
+    return "spectate";
+  }
+}
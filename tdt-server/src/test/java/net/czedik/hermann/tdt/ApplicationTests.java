@@ -1,13 +1,26 @@
 package net.czedik.hermann.tdt;
 
+import java.nio.file.Path;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.context.web.WebAppConfiguration;
 
-@SpringBootTest
+// note: a test application.properties would replace the one of the server
+@SpringBootTest(properties = "management.server.port=0")
 @WebAppConfiguration
 class ApplicationTests {
 
+  @TempDir
+  static Path storageDir;
+
+  @DynamicPropertySource
+  static void storageProperties(DynamicPropertyRegistry registry) {
+    registry.add("storage.dir", storageDir::toString);
+  }
+
   @Test
   void contextLoads() {}
 }
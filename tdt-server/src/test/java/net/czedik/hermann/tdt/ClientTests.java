@@ -0,0 +1,116 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import net.czedik.hermann.tdt.playerstate.PlayerState;
+import net.czedik.hermann.tdt.playerstate.WaitForGameStartState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.web.socket.CloseStatus;
+
+class ClientTests {
+
+  private final RecordingWebSocketSession session =
+    new RecordingWebSocketSession("c1");
+
+  // sender tasks only run when the test runs them
+  private final List<Runnable> senderTasks = new ArrayList<>();
+
+  @Test
+  void dropsSupersededPlayerStates() {
+    Client client = createClient(
+      1_000_000,
+      Client.OverflowStrategy.DROP_SUPERSEDED
+    );
+    client.send(state("Alice"));
+    client.send(state("Bob"));
+    client.send(state("Carol"));
+    runSenderTasks();
+
+    assertEquals(List.of(json("Carol")), session.getSentTexts());
+    assertNull(session.getCloseStatus());
+  }
+
+  @Test
+  void sendsAllQueuedStatesInOrder() {
+    Client client = createClient(1_000_000, Client.OverflowStrategy.CLOSE);
+    client.send(state("Alice"));
+    client.send(state("Bob"));
+    runSenderTasks();
+    client.send(state("Carol"));
+    runSenderTasks();
+
+    assertEquals(
+      List.of(json("Alice"), json("Bob"), json("Carol")),
+      session.getSentTexts()
+    );
+    assertNull(session.getCloseStatus());
+  }
+
+  @ParameterizedTest
+  @EnumSource(Client.OverflowStrategy.class)
+  void closesWhenBufferSizeLimitIsExceeded(
+    Client.OverflowStrategy overflowStrategy
+  ) {
+    Client client = createClient(10, overflowStrategy);
+    client.send(state("Alice"));
+
+    // not closed by the caller, which could block it
+    assertNull(session.getCloseStatus());
+    runSenderTasks();
+    assertEquals(CloseStatus.SESSION_NOT_RELIABLE, session.getCloseStatus());
+
+    // nothing gets sent after closing
+    client.send(state("Bob"));
+    runSenderTasks();
+    assertTrue(session.getSentTexts().isEmpty());
+  }
+
+  @Test
+  void discardsPendingMessagesWhenClosed() {
+    Client client = createClient(
+      1_000_000,
+      Client.OverflowStrategy.DROP_SUPERSEDED
+    );
+    client.send(state("Alice"));
+    client.discardPendingMessages();
+    client.send(state("Bob"));
+    runSenderTasks();
+
+    assertTrue(session.getSentTexts().isEmpty());
+  }
+
+  private Client createClient(
+    int bufferSizeLimit,
+    Client.OverflowStrategy overflowStrategy
+  ) {
+    return new Client(
+      session,
+      new Client.SendSettings(bufferSizeLimit, 10_000, overflowStrategy),
+      senderTasks::add,
+      new GameMetrics(new SimpleMeterRegistry())
+    );
+  }
+
+  private void runSenderTasks() {
+    while (!senderTasks.isEmpty()) {
+      senderTasks.removeFirst().run();
+    }
+  }
+
+  private static PlayerState state(String playerName) {
+    return new WaitForGameStartState(
+      List.of(new PlayerInfo(playerName, "A", true))
+    );
+  }
+
+  private static String json(String playerName) {
+    return SerializedPlayerState.of(state(playerName)).getJson();
+  }
+}
@@ -0,0 +1,50 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DrawingUploadTests {
+
+  @TempDir
+  Path uploadDir;
+
+  @Test
+  void writesPartsToFile() throws IOException {
+    DrawingUpload upload = new DrawingUpload(
+      uploadDir.resolve("upload.tmp"),
+      10
+    );
+    assertTrue(upload.append(ByteBuffer.wrap(new byte[] { 1, 2, 3 })));
+    assertTrue(upload.append(ByteBuffer.wrap(new byte[] { 4, 5 })));
+
+    Path file = upload.finish();
+
+    assertEquals(5, upload.getSize());
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, Files.readAllBytes(file));
+    assertEquals(
+      "74f81fe167d99b4cb41d6d0ccda82278caee9f3e2f25d5e5a3936ff3dcec60d0",
+      upload.getContentHash()
+    );
+  }
+
+  @Test
+  void rejectsTooLargeDrawing() throws IOException {
+    Path file = uploadDir.resolve("upload.tmp");
+    DrawingUpload upload = new DrawingUpload(file, 4);
+    assertTrue(upload.append(ByteBuffer.wrap(new byte[3])));
+    assertFalse(upload.append(ByteBuffer.wrap(new byte[2])));
+
+    upload.abort();
+
+    assertFalse(Files.exists(file));
+  }
+}
@@ -0,0 +1,80 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DrawingWriterTests {
+
+  private static final String IMAGE_NAME = ImageStore.imageName(
+    "a".repeat(64)
+  );
+
+  @TempDir
+  Path dir;
+
+  private final ImageCache imageCache = new ImageCache(1_000_000, false);
+
+  @Test
+  void commitsAndCachesDrawing() throws Exception {
+    DrawingWriter drawingWriter = new DrawingWriter(
+      1,
+      1,
+      new ImageStore(dir.resolve("images")),
+      imageCache
+    );
+    Path uploadFile = Files.write(dir.resolve("upload"), new byte[] { 1 });
+    Path imagePath = dir.resolve("1.png");
+
+    drawingWriter
+      .commit(uploadFile, IMAGE_NAME, imagePath)
+      .get(10, TimeUnit.SECONDS);
+
+    assertTrue(Files.exists(imagePath));
+    // cached right away, so the first request is served from memory
+    ByteBuffer cached = imageCache.get(IMAGE_NAME);
+    assertNotNull(cached);
+    byte[] content = new byte[cached.remaining()];
+    cached.duplicate().get(content);
+    assertArrayEquals(new byte[] { 1 }, content);
+    drawingWriter.shutdown();
+  }
+
+  @Test
+  void failsAfterShutdown() throws IOException {
+    DrawingWriter drawingWriter = new DrawingWriter(
+      1,
+      1,
+      new ImageStore(dir.resolve("images")),
+      imageCache
+    );
+    drawingWriter.shutdown();
+    Path uploadFile = Files.write(dir.resolve("upload"), new byte[] { 1 });
+
+    CompletableFuture<?> committed = drawingWriter.commit(
+      uploadFile,
+      IMAGE_NAME,
+      dir.resolve("1.png")
+    );
+
+    // completed right away, so the caller can clean up
+    ExecutionException e = assertThrows(ExecutionException.class, () ->
+      committed.get(0, TimeUnit.SECONDS)
+    );
+    assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    assertTrue(Files.exists(uploadFile));
+  }
+}
@@ -0,0 +1,93 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameCatalogTests {
+
+  @TempDir
+  Path storageDir;
+
+  @Test
+  void scansStoredGames() throws IOException {
+    GameStore gameStore = new GameStore(storageDir.toString(), 1_000_000);
+    Path gameDir = storeGame(gameStore, "abcde");
+
+    GameCatalog catalog = new GameCatalog(storageDir.toString(), 2, gameStore);
+    catalog.getScan().join();
+
+    GameCatalog.Entry entry = catalog.get("abcde");
+    assertNotNull(entry);
+    assertEquals(GameState.State.Started, entry.state());
+    assertEquals(3, entry.round());
+    assertEquals(
+      Files.size(gameDir.resolve(Game.STATE_FILENAME)),
+      entry.bytes()
+    );
+    assertTrue(Files.exists(storageDir.resolve("catalog.bin")));
+    catalog.shutdown();
+    gameStore.close();
+  }
+
+  @Test
+  void removesDeletedGamesOnRescan() throws IOException {
+    GameStore gameStore = new GameStore(storageDir.toString(), 1_000_000);
+    Path gameDir = storeGame(gameStore, "abcde");
+    GameCatalog catalog = new GameCatalog(storageDir.toString(), 2, gameStore);
+    catalog.getScan().join();
+    catalog.shutdown();
+
+    Files.delete(gameDir.resolve(Game.STATE_FILENAME));
+    Files.delete(gameDir);
+
+    // loaded from the snapshot, then removed by the scan
+    GameCatalog reloaded = new GameCatalog(storageDir.toString(), 2, gameStore);
+    reloaded.getScan().join();
+    assertNull(reloaded.get("abcde"));
+    assertEquals(0, reloaded.size());
+    reloaded.shutdown();
+    gameStore.close();
+  }
+
+  @Test
+  void catalogsGameWithoutState() throws IOException {
+    GameStore gameStore = new GameStore(storageDir.toString(), 1_000_000);
+    // e.g. a crash before the state of a new game has been written
+    Path gameDir = Files.createDirectories(gameStore.getGameDir("abcde"));
+
+    GameCatalog catalog = new GameCatalog(storageDir.toString(), 2, gameStore);
+    catalog.getScan().join();
+
+    GameCatalog.Entry entry = catalog.get("abcde");
+    assertNotNull(entry);
+    assertEquals(GameState.State.WaitingForPlayers, entry.state());
+    assertEquals(0, entry.players());
+    assertEquals(
+      Files.getLastModifiedTime(gameDir).toMillis(),
+      entry.lastModifiedMillis()
+    );
+    catalog.shutdown();
+    gameStore.close();
+  }
+
+  private static Path storeGame(GameStore gameStore, String gameId)
+    throws IOException {
+    GameState gameState = new GameState();
+    gameState.state = GameState.State.Started;
+    gameState.round = 3;
+    Path gameDir = Files.createDirectories(gameStore.getGameDir(gameId));
+    Files.write(
+      gameDir.resolve(Game.STATE_FILENAME),
+      JSONHelper.objectMapper.writeValueAsBytes(gameState)
+    );
+    return gameDir;
+  }
+}
@@ -0,0 +1,65 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameIdAllocatorTests {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void convertsBetweenIdAndIndex() {
+    assertEquals(0, GameIdAllocator.toIndex("22222"));
+    assertEquals("22222", GameIdAllocator.toGameId(0));
+    assertEquals("zzzzz", GameIdAllocator.toGameId((1 << 25) - 1));
+    assertEquals(
+      "bench",
+      GameIdAllocator.toGameId(GameIdAllocator.toIndex("bench"))
+    );
+  }
+
+  @Test
+  void reservesUniqueIds() throws IOException {
+    GameIdAllocator allocator = new GameIdAllocator(
+      dir.resolve("ids.bitmap"),
+      action -> {}
+    );
+    Set<String> gameIds = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      String gameId = allocator.reserve();
+      GameManager.validateGameId(gameId);
+      assertTrue(gameIds.add(gameId));
+      assertTrue(allocator.isReserved(gameId));
+    }
+    allocator.close();
+  }
+
+  @Test
+  void rebuildsAndPersistsReservations() throws IOException {
+    Path bitmapFile = dir.resolve("ids.bitmap");
+    GameIdAllocator allocator = new GameIdAllocator(bitmapFile, action ->
+      action.accept("abcde")
+    );
+    assertTrue(allocator.isReserved("abcde"));
+    String gameId = allocator.reserve();
+    allocator.release("abcde");
+    allocator.close();
+
+    // the existing bitmap is used: no rebuild
+    GameIdAllocator reopened = new GameIdAllocator(bitmapFile, action ->
+      action.accept("abcde")
+    );
+    assertTrue(reopened.isReserved(gameId));
+    assertFalse(reopened.isReserved("abcde"));
+    reopened.close();
+  }
+}
@@ -0,0 +1,71 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class GameJournalTests {
+
+  private static final Player CREATOR = new Player("p1", "Alice", "a", true);
+  private static final Player PLAYER = new Player("p2", "Bob", "b", false);
+
+  @Test
+  void replayRebuildsState() throws IOException {
+    List<GameJournal.Entry> entries = List.of(
+      new GameJournal.Entry(1, new GameEvent.PlayerJoined(PLAYER)),
+      new GameJournal.Entry(
+        2,
+        new GameEvent.GameStarted(GameRoundsGenerator.generate(2))
+      ),
+      new GameJournal.Entry(3, new GameEvent.TextTyped(0, 0, "hello")),
+      new GameJournal.Entry(4, new GameEvent.TextTyped(1, 0, "world")),
+      new GameJournal.Entry(
+        5,
+        new GameEvent.RoundAdvanced(1, GameState.State.Started)
+      ),
+      new GameJournal.Entry(6, new GameEvent.ImageDrawn(0, 1, "x.png"))
+    );
+
+    List<GameJournal.Entry> parsed = GameJournal.parse(
+      GameJournal.serialize(entries)
+    );
+    assertEquals(entries.size(), parsed.size());
+
+    GameState gameState = new GameState();
+    gameState.players.add(CREATOR);
+    assertEquals(6, GameJournal.replay(gameState, parsed));
+
+    assertEquals(6, gameState.journalSeq);
+    assertEquals(2, gameState.players.size());
+    assertEquals(GameState.State.Started, gameState.state);
+    assertEquals(1, gameState.round);
+    Story[] stories = Objects.requireNonNull(gameState.stories);
+    assertEquals("hello", stories[0].elements[0].content);
+    assertEquals("world", stories[1].elements[0].content);
+    assertEquals("image", stories[0].elements[1].type);
+
+    // entries which are already contained in the state are skipped
+    assertEquals(0, GameJournal.replay(gameState, parsed));
+  }
+
+  @Test
+  void tornLastLineIsIgnored() throws IOException {
+    byte[] serialized = GameJournal.serialize(
+      List.of(
+        new GameJournal.Entry(1, new GameEvent.PlayerJoined(PLAYER)),
+        new GameJournal.Entry(2, new GameEvent.PlayerLeft(PLAYER.id()))
+      )
+    );
+    String torn = new String(serialized, StandardCharsets.UTF_8);
+    torn = torn.substring(0, torn.length() - 10);
+
+    List<GameJournal.Entry> entries = GameJournal.parse(
+      torn.getBytes(StandardCharsets.UTF_8)
+    );
+    assertEquals(1, entries.size());
+  }
+}
@@ -1,11 +1,42 @@
 package net.czedik.hermann.tdt;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import net.czedik.hermann.tdt.actions.AccessAction;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class GameManagerTests {
 
+  @TempDir
+  Path storageDir;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private @Nullable GameStore gameStore;
+
+  private @Nullable GameCatalog catalog;
+
+  private @Nullable ThumbnailGenerator thumbnailGenerator;
+
+  private @Nullable GameManager gameManager;
+
   @Test
   @SuppressWarnings("NullAway")
   void testValidateNullGameId() {
@@ -46,4 +77,189 @@ class GameManagerTests {
       GameManager.validateGameId("abcdl")
     );
   }
+
+  @Test
+  void evictsOnlyUnusedGames() throws IOException {
+    // every game is in excess of the max. number of resident games
+    GameManager gameManager = createGameManager(60_000, 0);
+    String usedGameId = gameManager.newGame(CREATE_GAME_REQUEST);
+    gameManager.newGame(CREATE_GAME_REQUEST);
+    Client client = createClient();
+    gameManager.handleAccessAction(
+      client,
+      new AccessAction(usedGameId, CREATE_GAME_REQUEST.playerId())
+    );
+    // unused games stay in memory until they get evicted
+    assertEquals(2, getGauge("tdt.games.loaded"));
+
+    gameManager.evictUnusedGames();
+
+    assertEquals(1, getGauge("tdt.game.loaders"));
+    assertEquals(1, getGauge("tdt.games.loaded"));
+
+    gameManager.clientDisconnected(client);
+    assertEquals(1, getGauge("tdt.games.loaded"));
+
+    gameManager.evictUnusedGames();
+
+    assertEquals(0, getGauge("tdt.game.loaders"));
+    // the evicted games can be loaded again
+    gameManager.handleAccessAction(
+      client,
+      new AccessAction(usedGameId, CREATE_GAME_REQUEST.playerId())
+    );
+    assertEquals(1, getGauge("tdt.games.loaded"));
+  }
+
+  @Test
+  void evictsGamesAfterTtl() throws IOException, InterruptedException {
+    GameManager gameManager = createGameManager(200, 10);
+    gameManager.newGame(CREATE_GAME_REQUEST);
+
+    gameManager.evictUnusedGames();
+    assertEquals(1, getGauge("tdt.games.loaded"));
+
+    Thread.sleep(300);
+    gameManager.evictUnusedGames();
+    assertEquals(0, getGauge("tdt.game.loaders"));
+  }
+
+  @Test
+  void storageOperationOnlyBlocksItsGame() throws Exception {
+    GameManager gameManager = createGameManager(60_000, 10);
+    CompletableFuture<Void> running = new CompletableFuture<>();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    try (
+      ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()
+    ) {
+      Future<Boolean> operation = executor.submit(() ->
+        gameManager.runIfUnused("abcde", () -> {
+          running.complete(null);
+          release.join();
+          return true;
+        })
+      );
+      running.get(10, TimeUnit.SECONDS);
+
+      // other games are not blocked, but the game is claimed
+      assertTrue(gameManager.runIfUnused("bcdef", () -> true));
+      assertFalse(gameManager.runIfUnused("abcde", () -> true));
+      // the game can only be loaded after the operation
+      Future<?> access = executor.submit(() ->
+        gameManager.handleAccessAction(
+          createClient(),
+          new AccessAction("abcde", CREATE_GAME_REQUEST.playerId())
+        )
+      );
+      Thread.sleep(100);
+      assertFalse(access.isDone());
+
+      release.complete(null);
+      assertTrue(operation.get(10, TimeUnit.SECONDS));
+      access.get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void storesMissingStoriesAfterCatalogScan() throws Exception {
+    // finished before the stories were stored
+    GameState gameState = new GameState();
+    gameState.state = GameState.State.Finished;
+    gameState.stories = new Story[0];
+    Path gameDir = Files.createDirectories(
+      storageDir.resolve("games").resolve("ab").resolve("cde")
+    );
+    Files.write(
+      gameDir.resolve(Game.STATE_FILENAME),
+      JSONHelper.objectMapper.writeValueAsBytes(gameState)
+    );
+
+    GameManager gameManager = createGameManager(60_000, 10);
+    // nothing pending, and the game does not get loaded for this
+    assertNull(gameManager.getStories("abcde"));
+    assertEquals(0, getGauge("tdt.game.loaders"));
+
+    Path storiesFile = gameDir.resolve(Game.STORIES_FILENAME);
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (
+      !Files.exists(storiesFile) && System.currentTimeMillis() < deadline
+    ) {
+      Thread.sleep(10);
+    }
+    assertTrue(Files.exists(storiesFile));
+    assertEquals(0, getGauge("tdt.game.loaders"));
+  }
+
+  private static final CreateGameRequest CREATE_GAME_REQUEST =
+    new CreateGameRequest("p1", "Alice", "a");
+
+  private GameManager createGameManager(
+    long residentGameTtlMillis,
+    int maxResidentGames
+  ) throws IOException {
+    GameStore gameStore = new GameStore(storageDir.toString(), 1_000_000);
+    GameCatalog catalog = new GameCatalog(storageDir.toString(), 1, gameStore);
+    ImageCache imageCache = new ImageCache(1_000_000, false);
+    ThumbnailGenerator thumbnailGenerator = new ThumbnailGenerator(
+      new int[] { 256 },
+      1,
+      16,
+      imageCache
+    );
+    GameManager gameManager = new GameManager(
+      storageDir.toString(),
+      60_000,
+      1,
+      16,
+      false,
+      residentGameTtlMillis,
+      maxResidentGames,
+      false,
+      0,
+      gameStore,
+      catalog,
+      imageCache,
+      thumbnailGenerator,
+      new GameMetrics(registry)
+    );
+    this.gameStore = gameStore;
+    this.catalog = catalog;
+    this.thumbnailGenerator = thumbnailGenerator;
+    this.gameManager = gameManager;
+    return gameManager;
+  }
+
+  private Client createClient() {
+    Executor senderExecutor = Runnable::run;
+    return new Client(
+      new RecordingWebSocketSession("c1"),
+      new Client.SendSettings(
+        1_000_000,
+        10_000,
+        Client.OverflowStrategy.DROP_SUPERSEDED
+      ),
+      senderExecutor,
+      new GameMetrics(new SimpleMeterRegistry())
+    );
+  }
+
+  private double getGauge(String name) {
+    return registry.get(name).gauge().value();
+  }
+
+  @AfterEach
+  void shutdown() throws IOException {
+    if (gameManager != null) {
+      gameManager.shutdown();
+    }
+    if (thumbnailGenerator != null) {
+      thumbnailGenerator.shutdown();
+    }
+    if (catalog != null) {
+      catalog.shutdown();
+    }
+    if (gameStore != null) {
+      gameStore.close();
+    }
+  }
 }
@@ -0,0 +1,138 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameStateWriterTests {
+
+  @TempDir
+  Path gameDir;
+
+  @Test
+  void pendingChangesAreVisibleUntilWritten() throws IOException {
+    GameStateWriter stateWriter = new GameStateWriter(
+      60_000,
+      new GameMetrics(new SimpleMeterRegistry())
+    );
+    byte[] first = bytes("{\"round\":1}");
+    byte[] second = bytes("{\"round\":2}");
+    byte[] journalEntries = bytes("{\"seq\":1}\n");
+
+    stateWriter.submit(gameDir, new Game.StateUpdate(first, null, null));
+    stateWriter.submit(
+      gameDir,
+      new Game.StateUpdate(null, journalEntries, null)
+    );
+    stateWriter.submit(gameDir, new Game.StateUpdate(second, null, null));
+    stateWriter.submit(
+      gameDir,
+      new Game.StateUpdate(null, journalEntries, null)
+    );
+
+    // coalesced: only the latest snapshot and the entries after it are pending
+    GameStateWriter.PendingWrite pendingWrite = stateWriter.getPendingWrite(
+      gameDir
+    );
+    assertArrayEquals(second, pendingWrite.snapshot());
+    assertEquals(1, pendingWrite.journalEntries().size());
+
+    stateWriter.shutdown();
+
+    pendingWrite = stateWriter.getPendingWrite(gameDir);
+    assertNull(pendingWrite.snapshot());
+    assertTrue(pendingWrite.journalEntries().isEmpty());
+    assertArrayEquals(
+      second,
+      Files.readAllBytes(gameDir.resolve(Game.STATE_FILENAME))
+    );
+    assertArrayEquals(
+      journalEntries,
+      Files.readAllBytes(gameDir.resolve(GameJournal.JOURNAL_FILENAME))
+    );
+  }
+
+  @Test
+  void snapshotReplacesJournal() throws IOException {
+    Files.write(gameDir.resolve(GameJournal.JOURNAL_FILENAME), bytes("old\n"));
+
+    GameStateWriter stateWriter = new GameStateWriter(
+      60_000,
+      new GameMetrics(new SimpleMeterRegistry())
+    );
+    stateWriter.submit(gameDir, new Game.StateUpdate(bytes("{}"), null, null));
+    stateWriter.shutdown();
+
+    assertFalse(Files.exists(gameDir.resolve(GameJournal.JOURNAL_FILENAME)));
+  }
+
+  @Test
+  void tornJournalLineIsTruncatedBeforeAppending() throws IOException {
+    Player player = new Player("p2", "Bob", "b", false);
+    byte[] first = GameJournal.serialize(
+      List.of(new GameJournal.Entry(1, new GameEvent.PlayerJoined(player)))
+    );
+    byte[] second = GameJournal.serialize(
+      List.of(new GameJournal.Entry(2, new GameEvent.PlayerLeft(player.id())))
+    );
+    // crash while appending the second entry
+    Path journalFile = gameDir.resolve(GameJournal.JOURNAL_FILENAME);
+    Files.write(journalFile, first);
+    Files.write(
+      journalFile,
+      Arrays.copyOf(second, second.length - 10),
+      StandardOpenOption.APPEND
+    );
+
+    GameStateWriter stateWriter = new GameStateWriter(
+      60_000,
+      new GameMetrics(new SimpleMeterRegistry())
+    );
+    stateWriter.submit(gameDir, new Game.StateUpdate(null, second, null));
+    stateWriter.shutdown();
+
+    List<GameJournal.Entry> entries = GameJournal.parse(
+      GameJournal.readBytes(gameDir)
+    );
+    assertEquals(2, entries.size());
+    assertEquals(2, entries.get(1).seq());
+  }
+
+  @Test
+  void storiesAreKeptWithNewerChanges() throws IOException {
+    GameStateWriter stateWriter = new GameStateWriter(
+      60_000,
+      new GameMetrics(new SimpleMeterRegistry())
+    );
+    byte[] stories = bytes("{\"state\":\"stories\"}");
+    stateWriter.submit(gameDir, new Game.StateUpdate(null, null, stories));
+    stateWriter.submit(gameDir, new Game.StateUpdate(bytes("{}"), null, null));
+
+    assertArrayEquals(stories, stateWriter.getPendingWrite(gameDir).stories());
+
+    stateWriter.shutdown();
+
+    assertNull(stateWriter.getPendingWrite(gameDir).stories());
+    assertArrayEquals(
+      stories,
+      Files.readAllBytes(gameDir.resolve(Game.STORIES_FILENAME))
+    );
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,59 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameStoreTests {
+
+  private static final String IMAGE_NAME = ImageStore.imageName(
+    "0123456789abcdef".repeat(4)
+  );
+
+  @TempDir
+  Path storageDir;
+
+  private GameStore gameStore;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    gameStore = new GameStore(storageDir.toString(), 1_000_000);
+  }
+
+  @AfterEach
+  void shutdown() throws IOException {
+    gameStore.close();
+  }
+
+  @Test
+  void archivesVariantsOfDrawings() throws IOException {
+    String gameId = gameStore.getIdAllocator().reserve();
+    Path gameDir = Files.createDirectories(gameStore.getGameDir(gameId));
+    Files.write(gameDir.resolve(Game.STATE_FILENAME), new byte[] { '{', '}' });
+    Files.write(
+      gameDir.resolve(Game.STORIES_FILENAME),
+      new byte[] { '[', ']' }
+    );
+    ImageStore images = gameStore.getImageStore();
+    Path upload = Files.write(storageDir.resolve("upload"), new byte[] { 1 });
+    images.addAndLink(upload, IMAGE_NAME, gameDir.resolve(IMAGE_NAME));
+    String variantName = ThumbnailGenerator.variantName(IMAGE_NAME, 256);
+    Files.write(images.getPath(variantName), new byte[] { 2 });
+
+    assertTrue(gameStore.archive(gameId));
+
+    // no other game uses the drawing
+    assertFalse(Files.exists(images.getPath(IMAGE_NAME)));
+    assertFalse(Files.exists(images.getPath(variantName)));
+    assertNotNull(gameStore.readArchivedFile(gameId, IMAGE_NAME));
+    assertNotNull(gameStore.readArchivedFile(gameId, variantName));
+  }
+}
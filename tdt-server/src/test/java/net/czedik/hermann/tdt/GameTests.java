@@ -0,0 +1,357 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import net.czedik.hermann.tdt.actions.AccessAction;
+import net.czedik.hermann.tdt.actions.JoinAction;
+import net.czedik.hermann.tdt.actions.TypeAction;
+import net.czedik.hermann.tdt.playerstate.DrawState;
+import net.czedik.hermann.tdt.playerstate.FrontendStory;
+import net.czedik.hermann.tdt.playerstate.FrontendStoryElement;
+import net.czedik.hermann.tdt.playerstate.PlayerState;
+import net.czedik.hermann.tdt.playerstate.StoriesState;
+import net.czedik.hermann.tdt.playerstate.TypeState;
+import net.czedik.hermann.tdt.playerstate.WaitForGameStartState;
+import net.czedik.hermann.tdt.playerstate.WaitForPlayersState;
+import net.czedik.hermann.tdt.playerstate.WaitForRoundFinishState;
+import org.apache.commons.lang3.ArrayUtils;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Plays games, and checks after every action that the states of the players
+ * (which are derived from incrementally updated indexes) match the states
+ * computed by plainly scanning the {@link GameState}. The game state is
+ * rebuilt independently from the stored changes of the game.
+ */
+class GameTests {
+
+  private static final String GAME_ID = "abcde";
+
+  private static final Player CREATOR = new Player("p1", "Alice", "a", true);
+
+  private final Game game = new Game(GAME_ID, Path.of(GAME_ID), CREATOR);
+
+  private final Map<Client, RecordingWebSocketSession> sessions =
+    new LinkedHashMap<>();
+
+  private final Map<Player, List<Client>> playerClients = new LinkedHashMap<>();
+
+  // rebuilt from the stored changes of the game
+  private @Nullable GameState storedState;
+
+  private int imageCount = 0;
+
+  @Test
+  void playsCompleteGame() throws IOException {
+    Client creatorClient = createClient(CREATOR);
+    assertTrue(
+      game.access(creatorClient, new AccessAction(GAME_ID, CREATOR.id()))
+    );
+    checkPlayerStates();
+
+    List<Player> players = new ArrayList<>(List.of(CREATOR));
+    for (int i = 2; i <= 5; i++) {
+      Player player = new Player("p" + i, "Player " + i, "b", false);
+      join(player);
+      players.add(player);
+      checkPlayerStates();
+    }
+    // a second client of the same player
+    join(players.get(1));
+    checkPlayerStates();
+
+    // the last player leaves: the indexes of the players are rebuilt
+    Player leaving = players.removeLast();
+    game.clientDisconnected(clients(leaving).getFirst());
+    playerClients.remove(leaving);
+    checkPlayerStates();
+    assertEquals(4, game.getPlayerCount());
+
+    game.start(creatorClient);
+    checkPlayerStates();
+    assertEquals(GameState.State.Started, game.getState());
+
+    int rounds = players.size();
+    for (int round = 0; round < rounds; round++) {
+      assertEquals(round, game.getRound());
+      // in a different order every round
+      List<Player> order = round % 2 == 0 ? players : players.reversed();
+      for (Player player : order) {
+        assertFalse(isFinished());
+        play(player, round);
+        checkPlayerStates();
+      }
+    }
+
+    assertEquals(GameState.State.Finished, game.getState());
+    assertTrue(isFinished());
+
+    // the index of the drawings gets rebuilt when the game is loaded
+    GameState loadedState = copy(updateStoredState());
+    Game loaded = new Game(GAME_ID, Path.of(GAME_ID), loadedState, 0);
+    for (int i = 1; i <= imageCount; i++) {
+      assertTrue(loaded.hasImage(imageName(i)));
+    }
+    assertFalse(loaded.hasImage(imageName(imageCount + 1)));
+  }
+
+  @Test
+  void repeatedActionsDoNotFinishTheRound() throws IOException {
+    Client creatorClient = createClient(CREATOR);
+    game.access(creatorClient, new AccessAction(GAME_ID, CREATOR.id()));
+    Player player = new Player("p2", "Bob", "b", false);
+    join(player);
+    join(new Player("p3", "Carol", "c", false));
+    game.start(creatorClient);
+    checkPlayerStates();
+
+    play(player, 0);
+    checkPlayerStates();
+    // typing again replaces the text, but does not finish the round
+    play(player, 0);
+    checkPlayerStates();
+    assertEquals(0, game.getRound());
+
+    play(CREATOR, 0);
+    checkPlayerStates();
+    // drawing in a type round is not possible
+    assertNull(game.prepareDrawing(creatorClient, nextImageName()));
+    assertEquals(0, game.getRound());
+  }
+
+  private void join(Player player) {
+    Client client = createClient(player);
+    assertTrue(
+      game.join(
+        client,
+        new JoinAction(GAME_ID, player.id(), player.name(), player.face())
+      )
+    );
+  }
+
+  private void play(Player player, int round) {
+    Client client = clients(player).getFirst();
+    if (round % 2 == 0) {
+      game.type(
+        client,
+        new TypeAction("Text of " + player.name() + " in round " + round)
+      );
+    } else {
+      Game.PendingDrawing drawing = Objects.requireNonNull(
+        game.prepareDrawing(client, nextImageName())
+      );
+      game.commitDrawing(drawing);
+      assertTrue(game.hasImage(drawing.imageName()));
+    }
+  }
+
+  private String nextImageName() {
+    return imageName(++imageCount);
+  }
+
+  private static String imageName(int number) {
+    return ImageStore.imageName("%064x".formatted(number));
+  }
+
+  private Client createClient(Player player) {
+    RecordingWebSocketSession session = new RecordingWebSocketSession(
+      "c" + sessions.size()
+    );
+    Client client = new Client(
+      session,
+      new Client.SendSettings(
+        1_000_000,
+        10_000,
+        Client.OverflowStrategy.CLOSE
+      ),
+      Runnable::run,
+      new GameMetrics(new SimpleMeterRegistry())
+    );
+    sessions.put(client, session);
+    playerClients.computeIfAbsent(player, p -> new ArrayList<>()).add(client);
+    return client;
+  }
+
+  private List<Client> clients(Player player) {
+    return Objects.requireNonNull(playerClients.get(player));
+  }
+
+  private void checkPlayerStates() throws IOException {
+    GameState gameState = updateStoredState();
+    assertEquals(gameState.state, game.getState());
+    assertEquals(gameState.round, game.getRound());
+
+    // a game which gets loaded builds its indexes from scratch
+    Game reloadedGame = new Game(
+      GAME_ID,
+      Path.of(GAME_ID),
+      copy(gameState),
+      0
+    );
+    for (Player player : gameState.players) {
+      String expected = json(expectedPlayerState(gameState, player));
+      assertEquals(expected, json(game.getPlayerState(player)), player.id());
+      assertEquals(expected, json(reloadedGame.getPlayerState(player)));
+      // the state which has been sent last to every client of the player
+      for (Client client : playerClients.getOrDefault(player, List.of())) {
+        List<String> sent = Objects.requireNonNull(
+          sessions.get(client)
+        ).getSentTexts();
+        if (!sent.isEmpty()) {
+          assertEquals(expected, sent.getLast(), client.getId());
+        }
+      }
+    }
+  }
+
+  private GameState updateStoredState() throws IOException {
+    Game.StateUpdate update = game.takeStateUpdate(false);
+    if (update != null) {
+      byte[] snapshot = update.snapshot();
+      byte[] journalEntries = update.journalEntries();
+      if (snapshot != null) {
+        storedState = JSONHelper.objectMapper.readValue(
+          snapshot,
+          GameState.class
+        );
+      } else if (journalEntries != null) {
+        GameJournal.replay(
+          Objects.requireNonNull(storedState),
+          GameJournal.parse(journalEntries)
+        );
+      }
+    }
+    return Objects.requireNonNull(storedState);
+  }
+
+  private static GameState copy(GameState gameState) {
+    return JSONHelper.objectMapper.readValue(
+      JSONHelper.objectMapper.writeValueAsBytes(gameState),
+      GameState.class
+    );
+  }
+
+  // all stories are complete
+  private boolean isFinished() throws IOException {
+    Story[] stories = updateStoredState().stories;
+    if (stories == null) {
+      return false;
+    }
+    for (Story story : stories) {
+      for (StoryElement element : story.elements) {
+        if (element == null) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static String json(PlayerState state) {
+    return SerializedPlayerState.of(state).getJson();
+  }
+
+  // the state of a player, computed by scanning the game state
+  private static PlayerState expectedPlayerState(
+    GameState gameState,
+    Player player
+  ) {
+    List<PlayerInfo> players = infos(gameState.players);
+    return switch (gameState.state) {
+      case WaitingForPlayers -> player.isCreator()
+        ? new WaitForPlayersState(players)
+        : new WaitForGameStartState(players);
+      case Started -> expectedStartedState(gameState, player);
+      case Finished -> new StoriesState(expectedStories(gameState));
+    };
+  }
+
+  private static PlayerState expectedStartedState(
+    GameState gameState,
+    Player player
+  ) {
+    int[][] gameMatrix = Objects.requireNonNull(gameState.gameMatrix);
+    Story[] stories = Objects.requireNonNull(gameState.stories);
+    int round = gameState.round;
+    int storyIndex = gameMatrix[round][gameState.players.indexOf(player)];
+    boolean typeRound = round % 2 == 0;
+    if (stories[storyIndex].elements[round] != null) {
+      List<Player> notFinished = new ArrayList<>();
+      for (int i = 0; i < gameState.players.size(); i++) {
+        if (stories[gameMatrix[round][i]].elements[round] == null) {
+          notFinished.add(gameState.players.get(i));
+        }
+      }
+      return new WaitForRoundFinishState(infos(notFinished), typeRound);
+    }
+    if (round == 0) {
+      return new TypeState(1, gameMatrix.length);
+    }
+    String previousContent = stories[storyIndex].elements[round - 1].content;
+    PlayerInfo previousPlayer = info(
+      gameState.players.get(
+        ArrayUtils.indexOf(gameMatrix[round - 1], storyIndex)
+      )
+    );
+    return typeRound
+      ? new TypeState(
+          round + 1,
+          gameMatrix.length,
+          "/api/image/" + GAME_ID + "/" + previousContent,
+          previousPlayer
+        )
+      : new DrawState(
+          round + 1,
+          gameMatrix.length,
+          previousContent,
+          previousPlayer
+        );
+  }
+
+  private static List<FrontendStory> expectedStories(GameState gameState) {
+    int[][] gameMatrix = Objects.requireNonNull(gameState.gameMatrix);
+    Story[] stories = Objects.requireNonNull(gameState.stories);
+    List<FrontendStory> frontendStories = new ArrayList<>();
+    for (int storyIndex = 0; storyIndex < stories.length; storyIndex++) {
+      List<FrontendStoryElement> elements = new ArrayList<>();
+      for (int round = 0; round < gameMatrix.length; round++) {
+        StoryElement element = stories[storyIndex].elements[round];
+        elements.add(
+          new FrontendStoryElement(
+            element.type,
+            "image".equals(element.type)
+              ? "/api/image/" + GAME_ID + "/" + element.content
+              : element.content,
+            info(
+              gameState.players.get(
+                ArrayUtils.indexOf(gameMatrix[round], storyIndex)
+              )
+            )
+          )
+        );
+      }
+      frontendStories.add(new FrontendStory(elements));
+    }
+    return frontendStories;
+  }
+
+  private static List<PlayerInfo> infos(List<Player> players) {
+    return players.stream().map(GameTests::info).toList();
+  }
+
+  private static PlayerInfo info(Player player) {
+    return new PlayerInfo(player.name(), player.face(), player.isCreator());
+  }
+}
@@ -0,0 +1,49 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class ImageCacheTests {
+
+  @Test
+  void evictsLeastRecentlyUsed() {
+    ImageCache imageCache = new ImageCache(250, false);
+    imageCache.put("a.png", new byte[100]);
+    imageCache.put("b.png", new byte[100]);
+    assertNotNull(imageCache.get("a.png"));
+
+    imageCache.put("c.png", new byte[100]);
+
+    assertNotNull(imageCache.get("a.png"));
+    assertNull(imageCache.get("b.png"));
+    assertNotNull(imageCache.get("c.png"));
+    assertEquals(
+      new ImageCache.Stats(3, 1, 1, 200, 2),
+      imageCache.getStats()
+    );
+  }
+
+  @Test
+  void storesImagesOffHeap() {
+    ImageCache imageCache = new ImageCache(1000, true);
+    byte[] image = { 1, 2, 3 };
+    imageCache.put("a.png", image);
+
+    var cached = imageCache.get("a.png");
+
+    assertNotNull(cached);
+    assertEquals(3, cached.remaining());
+    assertEquals(2, cached.get(1));
+  }
+
+  @Test
+  void doesNotCacheImagesLargerThanBudget() {
+    ImageCache imageCache = new ImageCache(10, false);
+    imageCache.put("a.png", new byte[11]);
+
+    assertNull(imageCache.get("a.png"));
+  }
+}
@@ -0,0 +1,97 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class ImageResponsesTests {
+
+  private static final String ETAG = ImageResponses.etagForImage("x.png");
+
+  @TempDir
+  Path tempDir;
+
+  private Path image;
+
+  private final byte[] content = new byte[1000];
+
+  @BeforeEach
+  void createImage() throws IOException {
+    Arrays.fill(content, (byte) 42);
+    content[100] = 1;
+    image = tempDir.resolve("x.png");
+    Files.write(image, content);
+  }
+
+  @Test
+  void sendsFullImageWithCachingHeaders() throws IOException {
+    MockHttpServletResponse response = send(
+      new MockHttpServletRequest("GET", "/")
+    );
+
+    assertEquals(200, response.getStatus());
+    assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+    assertEquals(
+      "max-age=31536000, public, immutable",
+      response.getHeader(HttpHeaders.CACHE_CONTROL)
+    );
+    assertEquals(content.length, response.getContentLength());
+    assertArrayEquals(content, response.getContentAsByteArray());
+  }
+
+  @Test
+  void sendsNotModified() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+    request.addHeader(HttpHeaders.IF_NONE_MATCH, ETAG);
+
+    MockHttpServletResponse response = send(request);
+
+    assertEquals(304, response.getStatus());
+    assertEquals(0, response.getContentAsByteArray().length);
+  }
+
+  @Test
+  void sendsRange() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+    request.addHeader(HttpHeaders.RANGE, "bytes=100-199");
+
+    MockHttpServletResponse response = send(request);
+
+    assertEquals(206, response.getStatus());
+    assertEquals(
+      "bytes 100-199/1000",
+      response.getHeader(HttpHeaders.CONTENT_RANGE)
+    );
+    assertArrayEquals(
+      Arrays.copyOfRange(content, 100, 200),
+      response.getContentAsByteArray()
+    );
+  }
+
+  @Test
+  void rejectsUnsatisfiableRange() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+    request.addHeader(HttpHeaders.RANGE, "bytes=2000-");
+
+    MockHttpServletResponse response = send(request);
+
+    assertEquals(416, response.getStatus());
+  }
+
+  private MockHttpServletResponse send(MockHttpServletRequest request)
+    throws IOException {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    ImageResponses.sendFile(request, response, image, ETAG);
+    return response;
+  }
+}
@@ -0,0 +1,76 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImageStoreTests {
+
+  private static final String IMAGE_NAME = ImageStore.imageName(
+    "0123456789abcdef".repeat(4)
+  );
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void storesEqualDrawingsOnce() throws IOException {
+    ImageStore store = new ImageStore(dir.resolve("images"));
+    Path game1 = Files.createDirectory(dir.resolve("game1"));
+    Path game2 = Files.createDirectory(dir.resolve("game2"));
+
+    assertTrue(
+      store.addAndLink(upload("1.tmp"), IMAGE_NAME, game1.resolve(IMAGE_NAME))
+    );
+    assertFalse(
+      store.addAndLink(upload("2.tmp"), IMAGE_NAME, game2.resolve(IMAGE_NAME))
+    );
+
+    assertFalse(Files.exists(dir.resolve("2.tmp")));
+    assertArrayEquals(
+      new byte[] { 1, 2, 3 },
+      Files.readAllBytes(game2.resolve(IMAGE_NAME))
+    );
+    assertEquals(2, store.getReferenceCount(IMAGE_NAME));
+  }
+
+  @Test
+  void deletesUnreferencedDrawing() throws IOException {
+    ImageStore store = new ImageStore(dir.resolve("images"));
+    Path game1 = Files.createDirectory(dir.resolve("game1"));
+    store.addAndLink(upload("1.tmp"), IMAGE_NAME, game1.resolve(IMAGE_NAME));
+
+    assertFalse(store.deleteIfUnreferenced(IMAGE_NAME));
+
+    Files.delete(game1.resolve(IMAGE_NAME));
+    assertTrue(store.deleteIfUnreferenced(IMAGE_NAME));
+    assertFalse(Files.exists(store.getPath(IMAGE_NAME)));
+  }
+
+  @Test
+  void checksLinksWithoutLeavingFiles() throws IOException {
+    ImageStore store = new ImageStore(dir.resolve("images"));
+    Path games = Files.createDirectory(dir.resolve("games"));
+
+    store.checkLinks(games);
+
+    try (Stream<Path> files = Files.list(dir.resolve("images"))) {
+      assertEquals(0, files.count());
+    }
+    try (Stream<Path> files = Files.list(games)) {
+      assertEquals(0, files.count());
+    }
+  }
+
+  private Path upload(String name) throws IOException {
+    return Files.write(dir.resolve(name), new byte[] { 1, 2, 3 });
+  }
+}
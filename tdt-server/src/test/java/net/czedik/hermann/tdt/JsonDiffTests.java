@@ -0,0 +1,87 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import net.czedik.hermann.tdt.playerstate.WaitForRoundFinishState;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ContainerNode;
+import tools.jackson.databind.node.ObjectNode;
+
+class JsonDiffTests {
+
+  @Test
+  void patchTransformsSourceIntoTarget() {
+    assertDiff("{\"a\":1,\"b\":[1,2]}", "{\"a\":2,\"b\":[1,2,3],\"c\":\"x\"}");
+    assertDiff("{\"a\":1,\"b\":[1,2,3]}", "{\"b\":[1]}");
+    assertDiff("{\"a/b\":{\"c~\":1}}", "{\"a/b\":{\"c~\":[2]}}");
+    assertDiff(
+      "{\"a\":[{\"x\":1},{\"x\":2}]}",
+      "{\"a\":[{\"x\":1},{\"x\":3}]}"
+    );
+    assertDiff("[1,2]", "{\"a\":1}");
+  }
+
+  @Test
+  void removedPlayerIsSmallPatch() {
+    PlayerInfo alice = new PlayerInfo("Alice", "A", true);
+    PlayerInfo bob = new PlayerInfo("Bob", "B", false);
+    JsonNode before = JSONHelper.objectMapper.valueToTree(
+      new WaitForRoundFinishState(List.of(alice, bob), true)
+    );
+    JsonNode after = JSONHelper.objectMapper.valueToTree(
+      new WaitForRoundFinishState(List.of(alice), true)
+    );
+
+    ArrayNode patch = JsonDiff.diff(before, after);
+
+    assertEquals(1, patch.size());
+    assertEquals("remove", patch.get(0).get("op").asString());
+    assertEquals(after, apply(before, patch));
+  }
+
+  private static void assertDiff(String source, String target) {
+    JsonNode sourceNode = JSONHelper.stringToJsonNode(source);
+    JsonNode targetNode = JSONHelper.stringToJsonNode(target);
+    ArrayNode patch = JsonDiff.diff(sourceNode, targetNode);
+    assertEquals(targetNode, apply(sourceNode, patch), patch.toString());
+  }
+
+  // minimal JSON Patch implementation (add, remove and replace), as a client would do it
+  private static JsonNode apply(JsonNode document, ArrayNode patch) {
+    JsonNode result = document.deepCopy();
+    for (JsonNode operation : patch) {
+      String op = operation.get("op").asString();
+      String path = operation.get("path").asString();
+      if (path.isEmpty()) {
+        result = operation.get("value");
+        continue;
+      }
+      int separator = path.lastIndexOf('/');
+      ContainerNode<?> parent = (ContainerNode<?>) result.at(
+        path.substring(0, separator)
+      );
+      String key = path
+        .substring(separator + 1)
+        .replace("~1", "/")
+        .replace("~0", "~");
+      if (parent instanceof ObjectNode object) {
+        if ("remove".equals(op)) {
+          object.remove(key);
+        } else {
+          object.set(key, operation.get("value"));
+        }
+      } else if (parent instanceof ArrayNode array) {
+        int index = Integer.parseInt(key);
+        switch (op) {
+          case "remove" -> array.remove(index);
+          case "add" -> array.insert(index, operation.get("value"));
+          default -> array.set(index, operation.get("value"));
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,133 @@
+package net.czedik.hermann.tdt;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Session which records the sent messages, instead of sending them.
+ */
+class RecordingWebSocketSession implements WebSocketSession {
+
+  private final String id;
+
+  private final Map<String, Object> attributes = new HashMap<>();
+
+  // guarded by this
+  private final List<WebSocketMessage<?>> sentMessages = new ArrayList<>();
+
+  // guarded by this
+  private @Nullable CloseStatus closeStatus;
+
+  RecordingWebSocketSession(String id) {
+    this.id = id;
+  }
+
+  /**
+   * @return the payloads of the sent text messages (in the order they have
+   * been sent)
+   */
+  synchronized List<String> getSentTexts() {
+    return sentMessages
+      .stream()
+      .filter(TextMessage.class::isInstance)
+      .map(message -> ((TextMessage) message).getPayload())
+      .toList();
+  }
+
+  synchronized @Nullable CloseStatus getCloseStatus() {
+    return closeStatus;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public @Nullable URI getUri() {
+    return null;
+  }
+
+  @Override
+  public HttpHeaders getHandshakeHeaders() {
+    return new HttpHeaders();
+  }
+
+  @Override
+  public Map<String, Object> getAttributes() {
+    return attributes;
+  }
+
+  @Override
+  public @Nullable Principal getPrincipal() {
+    return null;
+  }
+
+  @Override
+  public @Nullable InetSocketAddress getLocalAddress() {
+    return null;
+  }
+
+  @Override
+  public @Nullable InetSocketAddress getRemoteAddress() {
+    return null;
+  }
+
+  @Override
+  public @Nullable String getAcceptedProtocol() {
+    return null;
+  }
+
+  @Override
+  public void setTextMessageSizeLimit(int messageSizeLimit) {}
+
+  @Override
+  public int getTextMessageSizeLimit() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public void setBinaryMessageSizeLimit(int messageSizeLimit) {}
+
+  @Override
+  public int getBinaryMessageSizeLimit() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public List<WebSocketExtension> getExtensions() {
+    return List.of();
+  }
+
+  @Override
+  public synchronized void sendMessage(WebSocketMessage<?> message) {
+    sentMessages.add(message);
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return closeStatus == null;
+  }
+
+  @Override
+  public void close() {
+    close(CloseStatus.NORMAL);
+  }
+
+  @Override
+  public synchronized void close(CloseStatus status) {
+    closeStatus = status;
+  }
+}
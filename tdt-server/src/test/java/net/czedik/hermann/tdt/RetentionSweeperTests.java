@@ -0,0 +1,264 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RetentionSweeperTests {
+
+  private static final long MAX_AGE_MILLIS = 60 * 60 * 1000;
+
+  @TempDir
+  Path storageDir;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private GameStore gameStore;
+
+  private @Nullable GameCatalog catalog;
+
+  private @Nullable ThumbnailGenerator thumbnailGenerator;
+
+  private @Nullable GameManager gameManager;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    gameStore = new GameStore(storageDir.toString(), 1_000_000);
+  }
+
+  @AfterEach
+  void shutdown() throws IOException {
+    if (gameManager != null) {
+      gameManager.shutdown();
+    }
+    if (thumbnailGenerator != null) {
+      thumbnailGenerator.shutdown();
+    }
+    if (catalog != null) {
+      catalog.shutdown();
+    }
+    gameStore.close();
+  }
+
+  @Test
+  void removesOnlyGamesOlderThanCutoff() throws IOException {
+    long now = System.currentTimeMillis();
+    String expired = storeGame(
+      GameState.State.WaitingForPlayers,
+      now - 2 * MAX_AGE_MILLIS
+    );
+    String recent = storeGame(
+      GameState.State.WaitingForPlayers,
+      now - MAX_AGE_MILLIS / 2
+    );
+    String started = storeGame(
+      GameState.State.Started,
+      now - 2 * MAX_AGE_MILLIS
+    );
+    String changed = storeGame(
+      GameState.State.WaitingForPlayers,
+      now - 2 * MAX_AGE_MILLIS
+    );
+    RetentionSweeper sweeper = createSweeper(1000);
+    // changed after the catalog has been scanned: checked again before removing
+    Files.setLastModifiedTime(
+      gameStore.getGameDir(changed).resolve(Game.STATE_FILENAME),
+      FileTime.fromMillis(now)
+    );
+
+    sweeper.sweep();
+
+    assertFalse(Files.exists(gameStore.getGameDir(expired)));
+    assertNull(getCatalogEntry(expired));
+    assertTrue(Files.exists(gameStore.getGameDir(recent)));
+    // started games are kept forever
+    assertTrue(Files.exists(gameStore.getGameDir(started)));
+    assertTrue(Files.exists(gameStore.getGameDir(changed)));
+    assertNotNull(getCatalogEntry(changed));
+  }
+
+  @Test
+  void keepsIdsOfDeletedFinishedGames() throws IOException {
+    long old = System.currentTimeMillis() - 2 * MAX_AGE_MILLIS;
+    String waiting = storeGame(GameState.State.WaitingForPlayers, old);
+    String finished = storeGame(GameState.State.Finished, old);
+    RetentionSweeper sweeper = createSweeper(1000);
+
+    sweeper.sweep();
+
+    assertFalse(Files.exists(gameStore.getGameDir(waiting)));
+    assertFalse(Files.exists(gameStore.getGameDir(finished)));
+    assertFalse(gameStore.getIdAllocator().isReserved(waiting));
+    // the URL of its stories may still be cached
+    assertTrue(gameStore.getIdAllocator().isReserved(finished));
+  }
+
+  @Test
+  void limitsRemovalRate() throws IOException {
+    long old = System.currentTimeMillis() - 2 * MAX_AGE_MILLIS;
+    List<String> gameIds = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      gameIds.add(storeGame(GameState.State.WaitingForPlayers, old));
+    }
+    // one game every 50 ms
+    RetentionSweeper sweeper = createSweeper(20);
+
+    long start = System.nanoTime();
+    sweeper.sweep();
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    assertTrue(elapsedMillis >= 5 * 50, "elapsed: " + elapsedMillis);
+    for (String gameId : gameIds) {
+      assertFalse(Files.exists(gameStore.getGameDir(gameId)));
+    }
+  }
+
+  @Test
+  void skipsFinishedGamesWithoutStories() throws IOException {
+    long old = System.currentTimeMillis() - 2 * MAX_AGE_MILLIS;
+    List<String> gameIds = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      gameIds.add(storeGame(GameState.State.Finished, old, false));
+    }
+    // one game per second, but only removed games count
+    RetentionSweeper sweeper = createSweeper(
+      1,
+      RetentionSweeper.FinishedGameAction.ARCHIVE
+    );
+
+    long start = System.nanoTime();
+    sweeper.sweep();
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    assertTrue(elapsedMillis < 1000, "elapsed: " + elapsedMillis);
+    for (String gameId : gameIds) {
+      assertTrue(Files.exists(gameStore.getGameDir(gameId)));
+      assertFalse(gameStore.isArchived(gameId));
+    }
+    assertEquals(
+      5,
+      registry.get("tdt.retention.unarchivable").gauge().value()
+    );
+  }
+
+  // after the games have been stored, so that the catalog contains them
+  private RetentionSweeper createSweeper(int maxGamesPerSecond)
+    throws IOException {
+    return createSweeper(
+      maxGamesPerSecond,
+      RetentionSweeper.FinishedGameAction.DELETE
+    );
+  }
+
+  private RetentionSweeper createSweeper(
+    int maxGamesPerSecond,
+    RetentionSweeper.FinishedGameAction finishedGameAction
+  ) throws IOException {
+    GameCatalog catalog = new GameCatalog(storageDir.toString(), 1, gameStore);
+    catalog.getScan().join();
+    ImageCache imageCache = new ImageCache(0, false);
+    ThumbnailGenerator thumbnailGenerator = new ThumbnailGenerator(
+      new int[0],
+      1,
+      1,
+      imageCache
+    );
+    GameManager gameManager = new GameManager(
+      storageDir.toString(),
+      60_000,
+      1,
+      16,
+      false,
+      0,
+      0,
+      false,
+      0,
+      gameStore,
+      catalog,
+      imageCache,
+      thumbnailGenerator,
+      new GameMetrics(registry)
+    );
+    this.catalog = catalog;
+    this.thumbnailGenerator = thumbnailGenerator;
+    this.gameManager = gameManager;
+    return new RetentionSweeper(
+      // not scheduled: the tests call sweep() themselves
+      false,
+      60_000,
+      MAX_AGE_MILLIS,
+      0,
+      MAX_AGE_MILLIS,
+      finishedGameAction,
+      maxGamesPerSecond,
+      gameManager,
+      gameStore,
+      catalog,
+      new GameMetrics(registry)
+    );
+  }
+
+  private GameCatalog.@Nullable Entry getCatalogEntry(String gameId) {
+    return Objects.requireNonNull(catalog).get(gameId);
+  }
+
+  private String storeGame(GameState.State state, long lastModifiedMillis)
+    throws IOException {
+    return storeGame(
+      state,
+      lastModifiedMillis,
+      state == GameState.State.Finished
+    );
+  }
+
+  private String storeGame(
+    GameState.State state,
+    long lastModifiedMillis,
+    boolean withStories
+  ) throws IOException {
+    String gameId = gameStore.getIdAllocator().reserve();
+    GameState gameState = new GameState();
+    gameState.state = state;
+    Path gameDir = Files.createDirectories(gameStore.getGameDir(gameId));
+    Files.write(
+      gameDir.resolve(Game.STATE_FILENAME),
+      JSONHelper.objectMapper.writeValueAsBytes(gameState)
+    );
+    if (withStories) {
+      Files.write(
+        gameDir.resolve(Game.STORIES_FILENAME),
+        new byte[] { '[', ']' }
+      );
+    }
+    try (Stream<Path> files = Files.list(gameDir)) {
+      for (Path file : files.toList()) {
+        Files.setLastModifiedTime(
+          file,
+          FileTime.fromMillis(lastModifiedMillis)
+        );
+      }
+    }
+    Files.setLastModifiedTime(
+      gameDir,
+      FileTime.fromMillis(lastModifiedMillis)
+    );
+    return gameId;
+  }
+}
@@ -0,0 +1,148 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentStoreTests {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void readsAppendedFiles() throws IOException {
+    Path state = Files.write(dir.resolve("state.json"), new byte[] { 1, 2 });
+    Path image = Files.write(dir.resolve("1.png"), new byte[] { 3, 4, 5 });
+
+    try (SegmentStore store = new SegmentStore(dir.resolve("segments"), 100)) {
+      store.append("abcde", List.of(state, image));
+
+      assertTrue(store.contains("abcde"));
+      assertArrayEquals(
+        new byte[] { 1, 2 },
+        read(store, "abcde", "state.json")
+      );
+      assertArrayEquals(new byte[] { 3, 4, 5 }, read(store, "abcde", "1.png"));
+      assertNull(store.read("abcde", "2.png"));
+      assertNull(store.read("fghij", "state.json"));
+    }
+  }
+
+  @Test
+  void startsNewSegmentAndReloadsIndex() throws IOException {
+    Path image = Files.write(dir.resolve("1.png"), new byte[40]);
+    Path segmentsDir = dir.resolve("segments");
+
+    try (SegmentStore store = new SegmentStore(segmentsDir, 100)) {
+      store.append("abcde", List.of(image));
+      // does not fit into the first segment anymore
+      store.append("fghij", List.of(image));
+    }
+    assertTrue(Files.exists(segmentsDir.resolve("000002.seg")));
+
+    try (SegmentStore store = new SegmentStore(segmentsDir, 100)) {
+      assertTrue(store.contains("abcde"));
+      assertTrue(store.contains("fghij"));
+      assertFalse(store.contains("klmno"));
+      assertArrayEquals(new byte[40], read(store, "fghij", "1.png"));
+    }
+  }
+
+  @Test
+  void removedGamesStayRemovedAfterReload() throws IOException {
+    Path image = Files.write(dir.resolve("1.png"), new byte[] { 1 });
+    Path segmentsDir = dir.resolve("segments");
+
+    try (SegmentStore store = new SegmentStore(segmentsDir, 100)) {
+      store.append("abcde", List.of(image));
+      assertTrue(store.remove("abcde"));
+      assertFalse(store.remove("abcde"));
+      assertNull(store.read("abcde", "1.png"));
+    }
+
+    try (SegmentStore store = new SegmentStore(segmentsDir, 100)) {
+      assertFalse(store.contains("abcde"));
+      // the id can be used again
+      store.append("abcde", List.of(image));
+      assertTrue(store.contains("abcde"));
+    }
+  }
+
+  @Test
+  void keepsArchiveTimeAfterReload() throws IOException {
+    Path image = Files.write(dir.resolve("1.png"), new byte[] { 1 });
+    Path segmentsDir = dir.resolve("segments");
+
+    long before = System.currentTimeMillis();
+    long archivedMillis;
+    try (SegmentStore store = new SegmentStore(segmentsDir, 100)) {
+      store.append("abcde", List.of(image));
+      archivedMillis = Objects.requireNonNull(
+        store.getFileStats("abcde")
+      ).lastModifiedMillis();
+    }
+    assertTrue(archivedMillis >= before);
+    assertTrue(archivedMillis <= System.currentTimeMillis());
+
+    try (SegmentStore store = new SegmentStore(segmentsDir, 100)) {
+      // the segment file is not relevant
+      Files.setLastModifiedTime(
+        segmentsDir.resolve("000001.seg"),
+        FileTime.fromMillis(0)
+      );
+      GameStore.FileStats stats = Objects.requireNonNull(
+        store.getFileStats("abcde")
+      );
+      assertEquals(archivedMillis, stats.lastModifiedMillis());
+    }
+  }
+
+  @Test
+  void truncatesTornIndexRecordBeforeAppending() throws IOException {
+    Path image = Files.write(dir.resolve("1.png"), new byte[] { 1 });
+    Path other = Files.write(dir.resolve("2.png"), new byte[] { 2 });
+    Path segmentsDir = dir.resolve("segments");
+
+    try (SegmentStore store = new SegmentStore(segmentsDir, 100)) {
+      store.append("abcde", List.of(image));
+    }
+    // crash while appending a record
+    Files.write(
+      segmentsDir.resolve("000001.idx"),
+      new byte[] { 'f', 'g', 'h' },
+      StandardOpenOption.APPEND
+    );
+
+    try (SegmentStore store = new SegmentStore(segmentsDir, 100)) {
+      store.append("fghij", List.of(other));
+      assertArrayEquals(new byte[] { 1 }, read(store, "abcde", "1.png"));
+      assertArrayEquals(new byte[] { 2 }, read(store, "fghij", "2.png"));
+    }
+
+    try (SegmentStore store = new SegmentStore(segmentsDir, 100)) {
+      assertArrayEquals(new byte[] { 1 }, read(store, "abcde", "1.png"));
+      assertArrayEquals(new byte[] { 2 }, read(store, "fghij", "2.png"));
+    }
+  }
+
+  private static byte[] read(SegmentStore store, String gameId, String name)
+    throws IOException {
+    ByteBuffer buffer = Objects.requireNonNull(store.read(gameId, name));
+    byte[] content = new byte[buffer.remaining()];
+    buffer.get(content);
+    return content;
+  }
+}
@@ -0,0 +1,87 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SerialExecutorTests {
+
+  private static final int PRODUCERS = 8;
+
+  private static final int TASKS_PER_PRODUCER = 10_000;
+
+  @Test
+  void runsTasksInOrderAndNeverConcurrently() throws InterruptedException {
+    try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+      SerialExecutor serialExecutor = new SerialExecutor(executor);
+      AtomicInteger running = new AtomicInteger();
+      AtomicInteger maxRunning = new AtomicInteger();
+      // only accessed by the tasks, which run one at a time
+      List<List<Integer>> executed = new ArrayList<>();
+      for (int i = 0; i < PRODUCERS; i++) {
+        executed.add(new ArrayList<>());
+      }
+      CountDownLatch done = new CountDownLatch(
+        PRODUCERS * TASKS_PER_PRODUCER
+      );
+
+      List<Thread> producers = new ArrayList<>();
+      for (int p = 0; p < PRODUCERS; p++) {
+        List<Integer> executedOfProducer = executed.get(p);
+        producers.add(
+          Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < TASKS_PER_PRODUCER; i++) {
+              int seq = i;
+              serialExecutor.execute(() -> {
+                maxRunning.accumulateAndGet(
+                  running.incrementAndGet(),
+                  Math::max
+                );
+                executedOfProducer.add(seq);
+                running.decrementAndGet();
+                done.countDown();
+              });
+            }
+          })
+        );
+      }
+      for (Thread producer : producers) {
+        producer.join();
+      }
+
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+      assertEquals(1, maxRunning.get());
+      // the tasks of each producer ran in submission order (note: visible
+      // here, because the latch has been counted down after adding)
+      for (List<Integer> executedOfProducer : executed) {
+        assertEquals(TASKS_PER_PRODUCER, executedOfProducer.size());
+        for (int i = 0; i < TASKS_PER_PRODUCER; i++) {
+          assertEquals(i, executedOfProducer.get(i));
+        }
+      }
+    }
+  }
+
+  @Test
+  void failingTaskDoesNotStopLaterTasks() throws InterruptedException {
+    try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+      SerialExecutor serialExecutor = new SerialExecutor(executor);
+      CountDownLatch done = new CountDownLatch(1);
+
+      serialExecutor.execute(() -> {
+        throw new IllegalStateException("expected");
+      });
+      serialExecutor.execute(done::countDown);
+
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+  }
+}
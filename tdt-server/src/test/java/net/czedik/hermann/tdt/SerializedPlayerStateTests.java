@@ -0,0 +1,57 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.util.List;
+import net.czedik.hermann.tdt.playerstate.WaitForGameStartState;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+class SerializedPlayerStateTests {
+
+  private final SerializedPlayerState state = SerializedPlayerState.of(
+    new WaitForGameStartState(
+      List.of(
+        new PlayerInfo("Alice", "A", true),
+        new PlayerInfo("Bob", "B", false)
+      )
+    )
+  );
+
+  @Test
+  void cborContainsSameStateAsJson() {
+    BinaryMessage cborMessage = assertInstanceOf(
+      BinaryMessage.class,
+      state.getMessage(MessageEncoding.CBOR)
+    );
+    byte[] cbor = new byte[cborMessage.getPayloadLength()];
+    cborMessage.getPayload().get(cbor);
+
+    assertEquals(
+      JSONHelper.stringToJsonNode(state.getJson()),
+      MessageEncoding.CBOR.getObjectMapper().readTree(cbor)
+    );
+    assertEquals(cbor.length, state.getPayloadSize(MessageEncoding.CBOR));
+  }
+
+  @Test
+  void jsonIsSentAsText() {
+    TextMessage textMessage = assertInstanceOf(
+      TextMessage.class,
+      state.getMessage(MessageEncoding.JSON)
+    );
+    assertEquals(state.getJson(), textMessage.getPayload());
+  }
+
+  @Test
+  void encodingIsNegotiatedBySubprotocol() {
+    assertEquals(MessageEncoding.JSON, MessageEncoding.forSubprotocol(null));
+    assertEquals(MessageEncoding.JSON, MessageEncoding.forSubprotocol(""));
+    assertEquals(
+      MessageEncoding.CBOR,
+      MessageEncoding.forSubprotocol("tdt-cbor")
+    );
+  }
+}
@@ -0,0 +1,120 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import net.czedik.hermann.tdt.playerstate.PlayerState;
+import net.czedik.hermann.tdt.playerstate.SpectatorState;
+import org.junit.jupiter.api.Test;
+
+class SpectatorsTests {
+
+  private final Spectators spectators = new Spectators();
+
+  private final List<RecordingWebSocketSession> sessions = new ArrayList<>();
+
+  @Test
+  void broadcastsToAllSpectators() throws InterruptedException {
+    List<Client> clients = List.of(addClient(), addClient(), addClient());
+    assertEquals(3, spectators.size());
+
+    spectators.publish(state(1));
+
+    for (RecordingWebSocketSession session : sessions) {
+      awaitSent(session, List.of(json(1)));
+    }
+    assertTrue(spectators.remove(clients.getFirst()));
+    assertFalse(spectators.remove(clients.getFirst()));
+  }
+
+  @Test
+  void removedSpectatorsGetNoMoreStates() throws InterruptedException {
+    Client removed = addClient();
+    addClient();
+    spectators.publish(state(1));
+    awaitSent(sessions.get(1), List.of(json(1)));
+
+    spectators.remove(removed);
+    spectators.publish(state(2));
+
+    awaitSent(sessions.get(1), List.of(json(1), json(2)));
+    assertEquals(List.of(json(1)), sessions.get(0).getSentTexts());
+  }
+
+  @Test
+  void newSpectatorGetsLastBroadcastState() throws InterruptedException {
+    addClient();
+    spectators.publish(state(1));
+    spectators.publish(state(2));
+    // intermediate states may be skipped, but the last one always arrives
+    awaitLastSent(sessions.get(0), json(2));
+
+    addClient();
+
+    awaitSent(sessions.get(1), List.of(json(2)));
+  }
+
+  private Client addClient() {
+    RecordingWebSocketSession session = new RecordingWebSocketSession(
+      "s" + sessions.size()
+    );
+    sessions.add(session);
+    Client client = new Client(
+      session,
+      new Client.SendSettings(
+        1_000_000,
+        10_000,
+        Client.OverflowStrategy.DROP_SUPERSEDED
+      ),
+      Runnable::run,
+      new GameMetrics(new SimpleMeterRegistry())
+    );
+    spectators.add(client);
+    return client;
+  }
+
+  // the states are broadcast asynchronously
+  private static void awaitSent(
+    RecordingWebSocketSession session,
+    List<String> expected
+  ) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (
+      session.getSentTexts().size() < expected.size() &&
+      System.currentTimeMillis() < deadline
+    ) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, session.getSentTexts());
+  }
+
+  private static void awaitLastSent(
+    RecordingWebSocketSession session,
+    String expected
+  ) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (
+      !expected.equals(getLast(session.getSentTexts())) &&
+      System.currentTimeMillis() < deadline
+    ) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, getLast(session.getSentTexts()));
+  }
+
+  private static String getLast(List<String> texts) {
+    return texts.isEmpty() ? "" : texts.getLast();
+  }
+
+  private static PlayerState state(int round) {
+    return new SpectatorState("started", List.of(), round, 3, List.of(), null);
+  }
+
+  private static String json(int round) {
+    return SerializedPlayerState.of(state(round)).getJson();
+  }
+}
@@ -0,0 +1,112 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ThumbnailGeneratorTests {
+
+  @TempDir
+  Path gameDir;
+
+  @Test
+  void selectsSmallestSufficientWidth() {
+    ThumbnailGenerator generator = new ThumbnailGenerator(
+      new int[] { 512, 256 },
+      1,
+      1,
+      new ImageCache(0, false)
+    );
+    assertEquals(256, generator.selectWidth(100));
+    assertEquals(256, generator.selectWidth(256));
+    assertEquals(512, generator.selectWidth(300));
+    assertNull(generator.selectWidth(1000));
+    generator.shutdown();
+  }
+
+  @Test
+  void writesDownscaledVariants() throws IOException {
+    ImageCache imageCache = new ImageCache(1_000_000, false);
+    ThumbnailGenerator generator = new ThumbnailGenerator(
+      new int[] { 100, 250, 2000 },
+      1,
+      1,
+      imageCache
+    );
+    Path imagePath = gameDir.resolve("drawing.png");
+    byte[] image = png(
+      new BufferedImage(1000, 600, BufferedImage.TYPE_INT_ARGB)
+    );
+    Files.write(imagePath, image);
+
+    generator.writeVariants(imagePath);
+
+    BufferedImage small = ImageIO.read(
+      gameDir.resolve("drawing_100.png").toFile()
+    );
+    assertEquals(100, small.getWidth());
+    assertEquals(60, small.getHeight());
+    BufferedImage medium = ImageIO.read(
+      gameDir.resolve("drawing_250.png").toFile()
+    );
+    assertEquals(250, medium.getWidth());
+    assertNotNull(imageCache.get("drawing_250.png"));
+    // no upscaling
+    assertFalse(Files.exists(gameDir.resolve("drawing_2000.png")));
+    generator.shutdown();
+  }
+
+  @Test
+  void skipsImagesWithTooManyPixels() throws IOException {
+    ImageCache imageCache = new ImageCache(1_000_000, false);
+    ThumbnailGenerator generator = new ThumbnailGenerator(
+      new int[] { 100 },
+      1,
+      1,
+      imageCache
+    );
+    Path imagePath = gameDir.resolve("drawing.png");
+    // a tiny file, which claims to be 100000 x 100000 pixels
+    byte[] image = withSize(
+      png(new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB)),
+      100_000,
+      100_000
+    );
+    Files.write(imagePath, image);
+
+    generator.writeVariants(imagePath);
+
+    assertFalse(Files.exists(gameDir.resolve("drawing_100.png")));
+    assertNull(imageCache.get("drawing_100.png"));
+    generator.shutdown();
+  }
+
+  // changes the size in the header (IHDR chunk) of a PNG
+  private static byte[] withSize(byte[] png, int width, int height) {
+    ByteBuffer buffer = ByteBuffer.wrap(png);
+    buffer.putInt(16, width);
+    buffer.putInt(20, height);
+    CRC32 crc = new CRC32();
+    crc.update(png, 12, 17);
+    buffer.putInt(29, (int) crc.getValue());
+    return png;
+  }
+
+  private static byte[] png(BufferedImage image) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,139 @@
+package net.czedik.hermann.tdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+
+class WebSocketHandlerTests {
+
+  @TempDir
+  Path storageDir;
+
+  private final RecordingWebSocketSession session =
+    new RecordingWebSocketSession("c1");
+
+  private final GameMetrics metrics = new GameMetrics(
+    new SimpleMeterRegistry()
+  );
+
+  private GameStore gameStore;
+
+  private GameCatalog catalog;
+
+  private ThumbnailGenerator thumbnailGenerator;
+
+  private GameManager gameManager;
+
+  private WebSocketHandler webSocketHandler;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    gameStore = new GameStore(storageDir.toString(), 1_000_000);
+    catalog = new GameCatalog(storageDir.toString(), 1, gameStore);
+    ImageCache imageCache = new ImageCache(0, false);
+    thumbnailGenerator = new ThumbnailGenerator(new int[0], 1, 1, imageCache);
+    gameManager = new GameManager(
+      storageDir.toString(),
+      60_000,
+      1,
+      16,
+      false,
+      0,
+      0,
+      false,
+      0,
+      gameStore,
+      catalog,
+      imageCache,
+      thumbnailGenerator,
+      metrics
+    );
+    webSocketHandler = new WebSocketHandler(
+      gameManager,
+      new Client.SendSettings(
+        1_000_000,
+        10_000,
+        Client.OverflowStrategy.DROP_SUPERSEDED
+      ),
+      metrics,
+      1_000_000
+    );
+    webSocketHandler.afterConnectionEstablished(session);
+  }
+
+  @AfterEach
+  void shutdown() throws IOException {
+    // aborts the upload which may be in progress
+    webSocketHandler.afterConnectionClosed(session, CloseStatus.NORMAL);
+    gameManager.shutdown();
+    thumbnailGenerator.shutdown();
+    catalog.shutdown();
+    gameStore.close();
+  }
+
+  @Test
+  void acceptsPngSignatureSplitAcrossParts() throws IOException {
+    send(new byte[] { (byte) 0x89, 'P' }, false);
+    send(new byte[] { 'N', 'G', '\r' }, false);
+    assertEquals(0, countUploads());
+
+    send(new byte[] { '\n', 0x1a, '\n', 1, 2, 3 }, false);
+
+    // the upload has started, with the whole signature
+    assertEquals(1, countUploads());
+    try (Stream<Path> uploads = Files.list(uploadsDir())) {
+      assertEquals(11, Files.size(uploads.findFirst().orElseThrow()));
+    }
+  }
+
+  @Test
+  void rejectsDrawingWhichIsNotPng() throws IOException {
+    send(new byte[] { (byte) 0x89, 'P' }, false);
+
+    assertThrows(IllegalArgumentException.class, () ->
+      send(new byte[] { 'N', 'G', 0, 0, 0, 0 }, false)
+    );
+    assertEquals(0, countUploads());
+  }
+
+  @Test
+  void rejectsShortDrawing() throws IOException {
+    send(new byte[] { (byte) 0x89, 'P' }, false);
+
+    assertThrows(IllegalArgumentException.class, () ->
+      send(new byte[] { 'N', 'G' }, true)
+    );
+  }
+
+  private void send(byte[] part, boolean isLast) throws IOException {
+    webSocketHandler.handleBinaryMessage(
+      session,
+      new BinaryMessage(ByteBuffer.wrap(part), isLast)
+    );
+  }
+
+  private Path uploadsDir() {
+    return storageDir.resolve("uploads");
+  }
+
+  private long countUploads() throws IOException {
+    if (!Files.exists(uploadsDir())) {
+      return 0;
+    }
+    try (Stream<Path> uploads = Files.list(uploadsDir())) {
+      return uploads.count();
+    }
+  }
+}